@@ -0,0 +1,146 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+
+/**
+ * Generates mappers that copy properties from one bean to another with
+ * straight-line compiled code. A property is a public getter, setter or field.
+ * A null wrapper value is not copied to a primitive property. Mappers are
+ * cached per source class, target class and mapping, in a bounded cache that
+ * drops mappers whose generation has been retired.
+ */
+public final class BeanMapperGenerator {
+
+	private final RuntimeCompiler compiler;
+	private final GeneratedInstanceCache<List<Object>, BiFunction<?, ?, ?>> mappers = new GeneratedInstanceCache<>();
+
+	/**
+	 * @param compiler Compiler used to compile mappers.
+	 */
+	public BeanMapperGenerator(final RuntimeCompiler compiler) {
+		this.compiler = Objects.requireNonNull(compiler, "compiler is null");
+	}
+
+	/**
+	 * Creates a mapper that copies every property of source to the writable
+	 * property of target with the same name, where the types are compatible.
+	 *
+	 * @return BiFunction that copies the properties of its first argument into
+	 *         its second argument and returns the second argument.
+	 * @throws CompilationException Thrown if the mapper fails to compile.
+	 */
+	public <S, D> BiFunction<S, D, D> getMapper(final Class<S> source, final Class<D> target)
+			throws CompilationException {
+		return getMapper(source, target, null);
+	}
+
+	/**
+	 * Creates a mapper that copies the source properties named in mapping to
+	 * their target properties.
+	 *
+	 * @param mapping Map of target property name to source property name. Null
+	 *                maps properties with the same name.
+	 * @return BiFunction that copies the properties of its first argument into
+	 *         its second argument and returns the second argument.
+	 * @throws CompilationException Thrown if a property in mapping does not exist
+	 *                              or has an incompatible type, or the mapper
+	 *                              fails to compile.
+	 */
+	@SuppressWarnings("unchecked")
+	public <S, D> BiFunction<S, D, D> getMapper(final Class<S> source, final Class<D> target,
+			final Map<String, String> mapping) throws CompilationException {
+		Objects.requireNonNull(source, "source is null");
+		Objects.requireNonNull(target, "target is null");
+		final List<Object> key = Arrays.asList(source, target, mapping == null ? null : new TreeMap<>(mapping));
+		final BiFunction<?, ?, ?> cached = mappers.get(key);
+		if (cached != null) {
+			return (BiFunction<S, D, D>) cached;
+		}
+
+		final BiFunction<S, D, D> mapper = compiler.compileAndConstructBiFunctionalInterface(source, target, target,
+				getBody(source, target, mapping));
+		return (BiFunction<S, D, D>) mappers.putIfAbsent(key, mapper);
+	}
+
+	private static String getBody(final Class<?> source, final Class<?> target, final Map<String, String> mapping)
+			throws CompilationException {
+		final Map<String, Property> readable = Property.readable(source);
+		final Map<String, Property> writable = Property.writable(target);
+
+		// Sorted so the same mapping always produces the same source.
+		final Map<String, String> pairs = new TreeMap<>();
+		if (mapping == null) {
+			for (final Map.Entry<String, Property> e : writable.entrySet()) {
+				final Property from = readable.get(e.getKey());
+				if (from != null && Property.isAssignable(from.getType(), e.getValue().getType())) {
+					pairs.put(e.getKey(), e.getKey());
+				}
+			}
+		} else {
+			// Reported in the message, as unit errors are for classes that fail to
+			// compile.
+			final List<String> errors = new ArrayList<>();
+			for (final Map.Entry<String, String> e : mapping.entrySet()) {
+				final Property to = writable.get(e.getKey());
+				final Property from = readable.get(e.getValue());
+				if (to == null) {
+					errors.add("No writable property " + e.getKey() + " on " + target.getName());
+				} else if (from == null) {
+					errors.add("No readable property " + e.getValue() + " on " + source.getName());
+				} else if (!Property.isAssignable(from.getType(), to.getType())) {
+					errors.add("Cannot assign " + from.getType().getName() + " to " + to.getType().getName()
+							+ " for property " + e.getKey());
+				} else {
+					pairs.put(e.getKey(), e.getValue());
+				}
+			}
+			if (!errors.isEmpty()) {
+				throw new CompilationException("Invalid mapping from " + source.getName() + " to " + target.getName()
+						+ ": " + String.join("; ", errors));
+			}
+		}
+
+		final StringBuilder body = new StringBuilder();
+		for (final Map.Entry<String, String> e : pairs.entrySet()) {
+			final Property from = readable.get(e.getValue());
+			final Property to = writable.get(e.getKey());
+			if (!from.getType().isPrimitive() && to.getType().isPrimitive()) {
+				// Unboxing null would throw, so null leaves the target unchanged.
+				body.append("{\nfinal " + from.getType().getCanonicalName() + " v = " + from.read("arg1")
+						+ ";\nif (v != null) {\n" + to.write("arg2", "v") + "\n}\n}\n");
+			} else {
+				body.append(to.write("arg2", from.read("arg1"))).append("\n");
+			}
+		}
+		body.append("return arg2;");
+		return body.toString();
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes objects of one class to and from a ByteBuffer. Each encoding starts
+ * with the codec's schema fingerprint, so bytes written for a different layout
+ * of the class are detected when decoded.
+ *
+ * @param <T> Type encoded.
+ */
+public interface BinaryCodec<T> {
+
+	/**
+	 * @return Hash of the class name and the names and types of the encoded
+	 *         fields, in encoding order.
+	 */
+	long fingerprint();
+
+	/**
+	 * @return Number of bytes {@link #encode(Object, ByteBuffer)} writes for
+	 *         value.
+	 */
+	int encodedSize(T value);
+
+	/**
+	 * Writes value at the buffer's position using the buffer's byte order.
+	 */
+	void encode(T value, ByteBuffer buffer);
+
+	/**
+	 * Reads a value from the buffer's position using the buffer's byte order.
+	 *
+	 * @throws InvokationException Thrown if the encoded fingerprint does not
+	 *                             match this codec's or an encoded length
+	 *                             exceeds the bytes remaining in the buffer.
+	 */
+	T decode(ByteBuffer buffer);
+}
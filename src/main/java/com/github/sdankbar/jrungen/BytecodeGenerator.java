@@ -0,0 +1,426 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes class files directly, without generating and compiling Java source.
+ * Only supports straight-line code, so no StackMapTable is needed.
+ */
+final class BytecodeGenerator {
+
+	private static final int CLASS_VERSION = 52; // Java 8
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	private static final int ACONST_NULL = 0x01;
+	private static final int ICONST_0 = 0x03;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC_W = 0x13;
+	private static final int ALOAD_0 = 0x2A;
+	private static final int ALOAD_1 = 0x2B;
+	private static final int ALOAD_2 = 0x2C;
+	private static final int ALOAD_3 = 0x2D;
+	private static final int AALOAD = 0x32;
+	private static final int ASTORE_3 = 0x4E;
+	private static final int ARETURN = 0xB0;
+	private static final int RETURN = 0xB1;
+	private static final int INVOKEVIRTUAL = 0xB6;
+	private static final int INVOKESPECIAL = 0xB7;
+	private static final int INVOKESTATIC = 0xB8;
+	private static final int INVOKEINTERFACE = 0xB9;
+	private static final int CHECKCAST = 0xC0;
+
+	/**
+	 * Constant pool of the class being written.
+	 */
+	private static final class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> indexes = new HashMap<>();
+		private int count = 1;
+
+		int utf8(final String s) throws IOException {
+			final String key = "U" + s;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				out.writeByte(CONSTANT_UTF8);
+				out.writeUTF(s);
+				index = add(key);
+			}
+			return index;
+		}
+
+		int integer(final int i) throws IOException {
+			final String key = "I" + i;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				out.writeByte(CONSTANT_INTEGER);
+				out.writeInt(i);
+				index = add(key);
+			}
+			return index;
+		}
+
+		int classRef(final String internalName) throws IOException {
+			final String key = "C" + internalName;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				final int name = utf8(internalName);
+				out.writeByte(CONSTANT_CLASS);
+				out.writeShort(name);
+				index = add(key);
+			}
+			return index;
+		}
+
+		int methodRef(final String owner, final String name, final String descriptor, final boolean isInterface)
+				throws IOException {
+			final String key = (isInterface ? "IM" : "M") + owner + "." + name + descriptor;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				final int ownerIndex = classRef(owner);
+				final int nameAndType = nameAndType(name, descriptor);
+				out.writeByte(isInterface ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF);
+				out.writeShort(ownerIndex);
+				out.writeShort(nameAndType);
+				index = add(key);
+			}
+			return index;
+		}
+
+		int nameAndType(final String name, final String descriptor) throws IOException {
+			final String key = "NT" + name + ":" + descriptor;
+			Integer index = indexes.get(key);
+			if (index == null) {
+				final int nameIndex = utf8(name);
+				final int descIndex = utf8(descriptor);
+				out.writeByte(CONSTANT_NAME_AND_TYPE);
+				out.writeShort(nameIndex);
+				out.writeShort(descIndex);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int add(final String key) {
+			final int index = count++;
+			indexes.put(key, index);
+			return index;
+		}
+	}
+
+	/**
+	 * Generates a class that implements BiFunction&lt;T, Object[], R&gt; by
+	 * calling a method, the same as the source generated by
+	 * {@link RuntimeCompiler#compileMethodCaller(Method)}.
+	 *
+	 * @param className Name of the class to generate.
+	 * @param m         Method to call. Must be public, in a public class and have
+	 *                  public parameter and return types.
+	 * @return The class file.
+	 * @throws CompilationException Thrown if the method cannot be called from
+	 *                              generated code.
+	 */
+	static byte[] methodCaller(final String className, final Method m) throws CompilationException {
+		if (!isAccessible(m)) {
+			throw new CompilationException("Method is not publicly accessible: " + m);
+		}
+
+		try {
+			final ConstantPool pool = new ConstantPool();
+			final int thisClass = pool.classRef(internalName(className));
+			final int superClass = pool.classRef("java/lang/Object");
+			final int biFunction = pool.classRef("java/util/function/BiFunction");
+
+			final byte[] constructor = constructor(pool);
+			final byte[] apply = callerApply(pool, m);
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+			final DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(CLASS_VERSION);
+			out.writeShort(pool.count);
+			pool.out.flush();
+			pool.bytes.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(biFunction);
+			out.writeShort(0); // Fields
+			out.writeShort(2); // Methods
+			out.write(constructor);
+			out.write(apply);
+			out.writeShort(0); // Attributes
+			out.flush();
+			return bytes.toByteArray();
+		} catch (final IOException e) {
+			throw new CompilationException("Error writing class file", e);
+		}
+	}
+
+	private static byte[] constructor(final ConstantPool pool) throws IOException {
+		final ByteArrayOutputStream code = new ByteArrayOutputStream(8);
+		code.write(ALOAD_0);
+		code.write(INVOKESPECIAL);
+		writeShort(code, pool.methodRef("java/lang/Object", "<init>", "()V", false));
+		code.write(RETURN);
+		return method(pool, ACC_PUBLIC, "<init>", "()V", 1, 1, code.toByteArray());
+	}
+
+	private static byte[] callerApply(final ConstantPool pool, final Method m) throws IOException {
+		final boolean isStatic = Modifier.isStatic(m.getModifiers());
+		final Class<?> owner = m.getDeclaringClass();
+		final Class<?>[] params = m.getParameterTypes();
+
+		final ByteArrayOutputStream code = new ByteArrayOutputStream(64);
+		int argSlots = 0;
+		if (params.length > 0) {
+			code.write(ALOAD_2);
+			code.write(CHECKCAST);
+			writeShort(code, pool.classRef("[Ljava/lang/Object;"));
+			code.write(ASTORE_3);
+		}
+		if (!isStatic) {
+			code.write(ALOAD_1);
+			code.write(CHECKCAST);
+			writeShort(code, pool.classRef(internalName(owner)));
+		}
+		for (int i = 0; i < params.length; ++i) {
+			code.write(ALOAD_3);
+			pushInt(pool, code, i);
+			code.write(AALOAD);
+			unboxOrCast(pool, code, params[i]);
+			argSlots += slots(params[i]);
+		}
+
+		final String descriptor = descriptor(m);
+		final boolean isInterface = owner.isInterface();
+		if (isStatic) {
+			code.write(INVOKESTATIC);
+			writeShort(code, pool.methodRef(internalName(owner), m.getName(), descriptor, isInterface));
+		} else if (isInterface) {
+			code.write(INVOKEINTERFACE);
+			writeShort(code, pool.methodRef(internalName(owner), m.getName(), descriptor, true));
+			code.write(1 + argSlots);
+			code.write(0);
+		} else {
+			code.write(INVOKEVIRTUAL);
+			writeShort(code, pool.methodRef(internalName(owner), m.getName(), descriptor, false));
+		}
+
+		final Class<?> ret = m.getReturnType();
+		if (ret == void.class) {
+			code.write(ACONST_NULL);
+		} else if (ret.isPrimitive()) {
+			final String box = internalName(boxType(ret));
+			code.write(INVOKESTATIC);
+			writeShort(code, pool.methodRef(box, "valueOf", "(" + descriptor(ret) + ")L" + box + ";", false));
+		}
+		code.write(ARETURN);
+
+		// Receiver, arguments, and the array and index while loading the last one.
+		final int maxStack = Math.max(2, (isStatic ? 0 : 1) + argSlots + 2);
+		return method(pool, ACC_PUBLIC, "apply", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", maxStack,
+				4, code.toByteArray());
+	}
+
+	private static void unboxOrCast(final ConstantPool pool, final ByteArrayOutputStream code, final Class<?> type)
+			throws IOException {
+		if (type.isPrimitive()) {
+			final String box = internalName(boxType(type));
+			code.write(CHECKCAST);
+			writeShort(code, pool.classRef(box));
+			code.write(INVOKEVIRTUAL);
+			writeShort(code, pool.methodRef(box, type.getName() + "Value", "()" + descriptor(type), false));
+		} else if (type != Object.class) {
+			code.write(CHECKCAST);
+			writeShort(code, pool.classRef(type.isArray() ? descriptor(type) : internalName(type)));
+		}
+	}
+
+	private static void pushInt(final ConstantPool pool, final ByteArrayOutputStream code, final int i)
+			throws IOException {
+		if (i <= 5) {
+			code.write(ICONST_0 + i);
+		} else if (i <= Byte.MAX_VALUE) {
+			code.write(BIPUSH);
+			code.write(i);
+		} else if (i <= Short.MAX_VALUE) {
+			code.write(SIPUSH);
+			writeShort(code, i);
+		} else {
+			code.write(LDC_W);
+			writeShort(code, pool.integer(i));
+		}
+	}
+
+	private static byte[] method(final ConstantPool pool, final int access, final String name,
+			final String descriptor, final int maxStack, final int maxLocals, final byte[] code) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.length + 32);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeShort(access);
+		out.writeShort(pool.utf8(name));
+		out.writeShort(pool.utf8(descriptor));
+		out.writeShort(1);
+		out.writeShort(pool.utf8("Code"));
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); // Exception table
+		out.writeShort(0); // Attributes
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void writeShort(final ByteArrayOutputStream out, final int value) {
+		out.write((value >> 8) & 0xFF);
+		out.write(value & 0xFF);
+	}
+
+	/**
+	 * @return True if the generated class, which is in another package, can
+	 *         call m and name its parameter and return types.
+	 */
+	private static boolean isAccessible(final Method m) {
+		if (!Modifier.isPublic(m.getModifiers()) || !isPublic(m.getDeclaringClass())
+				|| !isPublic(m.getReturnType())) {
+			return false;
+		}
+		for (final Class<?> p : m.getParameterTypes()) {
+			if (!isPublic(p)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isPublic(final Class<?> type) {
+		Class<?> c = type;
+		while (c.isArray()) {
+			c = c.getComponentType();
+		}
+		if (c.isPrimitive()) {
+			return true;
+		}
+		for (; c != null; c = c.getEnclosingClass()) {
+			if (!Modifier.isPublic(c.getModifiers())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int slots(final Class<?> c) {
+		return c == long.class || c == double.class ? 2 : 1;
+	}
+
+	static Class<?> boxType(final Class<?> c) {
+		if (c == boolean.class) {
+			return Boolean.class;
+		} else if (c == byte.class) {
+			return Byte.class;
+		} else if (c == char.class) {
+			return Character.class;
+		} else if (c == short.class) {
+			return Short.class;
+		} else if (c == int.class) {
+			return Integer.class;
+		} else if (c == long.class) {
+			return Long.class;
+		} else if (c == float.class) {
+			return Float.class;
+		} else if (c == double.class) {
+			return Double.class;
+		} else {
+			return Void.class;
+		}
+	}
+
+	static String internalName(final Class<?> c) {
+		return internalName(c.getName());
+	}
+
+	static String internalName(final String className) {
+		return className.replace('.', '/');
+	}
+
+	static String descriptor(final Method m) {
+		final StringBuilder b = new StringBuilder("(");
+		for (final Class<?> p : m.getParameterTypes()) {
+			b.append(descriptor(p));
+		}
+		return b.append(')').append(descriptor(m.getReturnType())).toString();
+	}
+
+	static String descriptor(final Class<?> c) {
+		if (c.isArray()) {
+			return internalName(c);
+		} else if (c == void.class) {
+			return "V";
+		} else if (c == boolean.class) {
+			return "Z";
+		} else if (c == byte.class) {
+			return "B";
+		} else if (c == char.class) {
+			return "C";
+		} else if (c == short.class) {
+			return "S";
+		} else if (c == int.class) {
+			return "I";
+		} else if (c == long.class) {
+			return "J";
+		} else if (c == float.class) {
+			return "F";
+		} else if (c == double.class) {
+			return "D";
+		} else {
+			return "L" + internalName(c) + ";";
+		}
+	}
+
+	private BytecodeGenerator() {
+		// Static only
+	}
+}
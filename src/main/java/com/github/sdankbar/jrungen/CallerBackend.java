@@ -0,0 +1,48 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+/**
+ * Ways of generating the BiFunction used to call a Method.
+ */
+public enum CallerBackend {
+
+	/**
+	 * Generates and compiles Java source that calls the method directly. Slow to
+	 * create, but produces the fastest caller.
+	 */
+	JAVAC,
+
+	/**
+	 * Adapts a MethodHandle for the method. Created in microseconds and does not
+	 * require a Java compiler to be available at runtime.
+	 */
+	METHOD_HANDLE,
+
+	/**
+	 * Writes the caller's class file directly, skipping javac. As fast to call as
+	 * {@link #JAVAC} and far cheaper to create, but only supports public methods
+	 * of public classes.
+	 */
+	BYTECODE
+}
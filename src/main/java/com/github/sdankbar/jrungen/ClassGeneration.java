@@ -0,0 +1,174 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A group of generated classes that share a class loader. Classes are only
+ * unloaded along with their loader, so a generation is the unit in which
+ * generated classes are released: once it has been retired with
+ * {@link RuntimeCompiler#retireGeneration(ClassGeneration)} and nothing else
+ * references its classes or their instances, all of them can be unloaded
+ * together.
+ */
+public final class ClassGeneration {
+
+	private static final AtomicLong IDS = new AtomicLong();
+
+	/**
+	 * @return True if c was generated into a generation that has since been
+	 *         retired.
+	 */
+	static boolean isRetired(final Class<?> c) {
+		final ClassGeneration g = of(c);
+		return g != null && g.isRetired();
+	}
+
+	/**
+	 * @return Generation c was generated into, or null if it was not generated.
+	 */
+	static ClassGeneration of(final Class<?> c) {
+		final ClassLoader l = c.getClassLoader();
+		return l instanceof InMemoryClassLoader ? ((InMemoryClassLoader) l).getGeneration() : null;
+	}
+
+	private final long id = IDS.incrementAndGet();
+	private final InMemoryClassLoader loader = new InMemoryClassLoader(this);
+	// Shared loaders for classes that must resolve types from another loader,
+	// by that loader.
+	private final Map<ClassLoader, InMemoryClassLoader> childLoaders = new HashMap<>();
+	private final AtomicInteger classCount = new AtomicInteger();
+	private final AtomicInteger loaderCount = new AtomicInteger(1);
+	private final AtomicLong bytecodeBytes = new AtomicLong();
+	private volatile boolean retired = false;
+
+	ClassGeneration() {
+		// Created by RuntimeCompiler.
+	}
+
+	/**
+	 * Defines classes in this generation. Classes are normally defined by the
+	 * shared loader, but a set of classes whose names clash with ones already in
+	 * this generation gets a loader of its own.
+	 *
+	 * @return Map of class name to defined class.
+	 */
+	Map<String, Class<?>> define(final Collection<InMemoryClassFile> classFiles) throws ClassNotFoundException {
+		return define(classFiles, null);
+	}
+
+	/**
+	 * Defines classes in this generation under parent. Classes with the same
+	 * parent share a loader, except for sets of classes with clashing names.
+	 *
+	 * @param parent Loader the classes resolve other types from, or null for the
+	 *               system class loader.
+	 * @return Map of class name to defined class.
+	 */
+	synchronized Map<String, Class<?>> define(final Collection<InMemoryClassFile> classFiles,
+			final ClassLoader parent) throws ClassNotFoundException {
+		InMemoryClassLoader shared = parent == null ? loader : childLoaders.get(parent);
+		if (shared == null) {
+			shared = newLoader(parent);
+			childLoaders.put(parent, shared);
+		}
+		InMemoryClassLoader target = shared;
+		for (final InMemoryClassFile f : classFiles) {
+			if (shared.contains(f.getClassName())) {
+				target = newLoader(parent);
+				break;
+			}
+		}
+
+		long bytes = 0;
+		for (final InMemoryClassFile f : classFiles) {
+			bytes += f.getBytes().length;
+			target.add(f);
+		}
+		final Map<String, Class<?>> classes = new LinkedHashMap<>();
+		for (final InMemoryClassFile f : classFiles) {
+			classes.put(f.getClassName(), target.loadClass(f.getClassName()));
+		}
+		classCount.addAndGet(classes.size());
+		bytecodeBytes.addAndGet(bytes);
+		return classes;
+	}
+
+	private InMemoryClassLoader newLoader(final ClassLoader parent) {
+		loaderCount.incrementAndGet();
+		return parent == null ? new InMemoryClassLoader(this) : new InMemoryClassLoader(this, parent);
+	}
+
+	void retire() {
+		retired = true;
+	}
+
+	/**
+	 * @return Identifier unique within this JVM, increasing with creation order.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return Number of classes defined in this generation.
+	 */
+	public int getClassCount() {
+		return classCount.get();
+	}
+
+	/**
+	 * @return Number of class loaders created for this generation, the shared
+	 *         loader plus one for each other parent loader and each set of
+	 *         classes with clashing names.
+	 */
+	public int getLoaderCount() {
+		return loaderCount.get();
+	}
+
+	/**
+	 * @return Total size of the class files defined in this generation. The
+	 *         metaspace used by a class grows with the size of its class file,
+	 *         so this is the best per generation estimate of metaspace use
+	 *         available without a JVMTI agent.
+	 */
+	public long getBytecodeBytes() {
+		return bytecodeBytes.get();
+	}
+
+	public boolean isRetired() {
+		return retired;
+	}
+
+	@Override
+	public String toString() {
+		return "ClassGeneration[" + id + ", " + classCount.get() + " classes, " + bytecodeBytes.get() + " bytes"
+				+ (retired ? ", retired]" : "]");
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A StandardJavaFileManager that is reused across compilations, along with an
+ * index of the package listings javac has requested from it. The classpath and
+ * JDK modules are assumed not to change while the JVM is running, so each
+ * package is only listed once per index. Listings are kept for the life of the
+ * index, so classes added to a classpath directory afterwards are not seen by
+ * compilations that use it.
+ *
+ * StandardJavaFileManager is not thread safe, so each compilation borrows an
+ * index with {@link #acquire()} and returns it with {@link #release()}. Up to
+ * {@link #MAX_IDLE} idle indexes are kept, any more are closed when released so
+ * their open jar files are not left for the garbage collector.
+ */
+final class ClassPathIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(ClassPathIndex.class);
+
+	/**
+	 * Maximum number of idle indexes kept for reuse.
+	 */
+	static final int MAX_IDLE = Integer.getInteger("jrungen.maxIdleFileManagers", 8);
+
+	private static final class ListKey {
+		private final Location location;
+		private final String packageName;
+		private final Set<Kind> kinds;
+		private final boolean recurse;
+
+		ListKey(final Location location, final String packageName, final Set<Kind> kinds, final boolean recurse) {
+			this.location = location;
+			this.packageName = packageName;
+			this.kinds = kinds;
+			this.recurse = recurse;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof ListKey)) {
+				return false;
+			}
+			final ListKey other = (ListKey) obj;
+			return location.equals(other.location) && packageName.equals(other.packageName)
+					&& kinds.equals(other.kinds) && recurse == other.recurse;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(location, packageName, kinds, Boolean.valueOf(recurse));
+		}
+	}
+
+	// Most recently released first, so the busiest indexes stay in use.
+	private static final Deque<ClassPathIndex> IDLE = new ArrayDeque<>();
+
+	/**
+	 * @return An index for the exclusive use of the caller until it is released.
+	 */
+	static ClassPathIndex acquire() {
+		synchronized (IDLE) {
+			final ClassPathIndex idle = IDLE.pollFirst();
+			if (idle != null) {
+				return idle;
+			}
+		}
+		return new ClassPathIndex(
+				javax.tools.ToolProvider.getSystemJavaCompiler().getStandardFileManager(null, null, null));
+	}
+
+	/**
+	 * Returns this index for reuse, or closes it if enough are idle already.
+	 */
+	void release() {
+		synchronized (IDLE) {
+			if (IDLE.size() < MAX_IDLE) {
+				IDLE.addFirst(this);
+				return;
+			}
+		}
+		try {
+			fileManager.close();
+		} catch (final IOException e) {
+			log.warn("Error closing file manager", e);
+		}
+	}
+
+	private final StandardJavaFileManager fileManager;
+	private final Map<ListKey, List<JavaFileObject>> listings = new HashMap<>();
+
+	private ClassPathIndex(final StandardJavaFileManager fileManager) {
+		this.fileManager = Objects.requireNonNull(fileManager, "fileManager is null");
+	}
+
+	StandardJavaFileManager getFileManager() {
+		return fileManager;
+	}
+
+	/**
+	 * @return True if listings of the location never change while the JVM is
+	 *         running.
+	 */
+	boolean isIndexed(final Location location) {
+		return !location.isOutputLocation() && location != StandardLocation.SOURCE_PATH
+				&& location != StandardLocation.ANNOTATION_PROCESSOR_PATH;
+	}
+
+	Iterable<JavaFileObject> list(final Location location, final String packageName, final Set<Kind> kinds,
+			final boolean recurse) throws IOException {
+		final ListKey key = new ListKey(location, packageName, kinds, recurse);
+		List<JavaFileObject> files = listings.get(key);
+		if (files == null) {
+			files = new ArrayList<>();
+			for (final JavaFileObject f : fileManager.list(location, packageName, kinds, recurse)) {
+				files.add(f);
+			}
+			listings.put(key, files);
+		}
+		return files;
+	}
+}
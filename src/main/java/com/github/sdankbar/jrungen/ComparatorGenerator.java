@@ -0,0 +1,221 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Generates Comparators that sort on one or more properties with straight-line
+ * compiled code. Primitive properties are compared without boxing and
+ * reference properties must be Comparable. Comparators are cached per class
+ * and sort specification.
+ */
+public final class ComparatorGenerator {
+
+	/**
+	 * A property to sort on, its direction and where nulls sort. Nulls sort
+	 * first or last regardless of direction.
+	 */
+	public static final class SortKey {
+
+		/**
+		 * @param property Name of a readable property, or a dotted path of
+		 *                 properties. See {@link BeanMapperGenerator}.
+		 * @return Ascending key with nulls sorted last.
+		 */
+		public static SortKey ascending(final String property) {
+			return new SortKey(property, false, false);
+		}
+
+		/**
+		 * @param property Name of a readable property, or a dotted path of
+		 *                 properties. See {@link BeanMapperGenerator}.
+		 * @return Descending key with nulls sorted last.
+		 */
+		public static SortKey descending(final String property) {
+			return new SortKey(property, true, false);
+		}
+
+		private final String property;
+		private final boolean descending;
+		private final boolean nullsFirst;
+
+		private SortKey(final String property, final boolean descending, final boolean nullsFirst) {
+			this.property = Objects.requireNonNull(property, "property is null");
+			this.descending = descending;
+			this.nullsFirst = nullsFirst;
+		}
+
+		/**
+		 * @return Copy of this key that sorts nulls before other values.
+		 */
+		public SortKey nullsFirst() {
+			return new SortKey(property, descending, true);
+		}
+
+		/**
+		 * @return Copy of this key that sorts nulls after other values.
+		 */
+		public SortKey nullsLast() {
+			return new SortKey(property, descending, false);
+		}
+
+		public String getProperty() {
+			return property;
+		}
+
+		public boolean isDescending() {
+			return descending;
+		}
+
+		public boolean isNullsFirst() {
+			return nullsFirst;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof SortKey)) {
+				return false;
+			}
+			final SortKey other = (SortKey) obj;
+			return property.equals(other.property) && descending == other.descending
+					&& nullsFirst == other.nullsFirst;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(property, descending, nullsFirst);
+		}
+
+		@Override
+		public String toString() {
+			return property + (descending ? " DESC" : " ASC") + (nullsFirst ? " NULLS FIRST" : " NULLS LAST");
+		}
+	}
+
+	private final RuntimeCompiler compiler;
+	private final GeneratedInstanceCache<List<Object>, Comparator<?>> comparators = new GeneratedInstanceCache<>();
+
+	/**
+	 * @param compiler Compiler used to compile comparators.
+	 */
+	public ComparatorGenerator(final RuntimeCompiler compiler) {
+		this.compiler = Objects.requireNonNull(compiler, "compiler is null");
+	}
+
+	/**
+	 * @param type Class of the objects being sorted.
+	 * @param keys Properties to sort on, most significant first.
+	 * @return Comparator that orders by each key in turn.
+	 * @throws CompilationException Thrown if a key's property does not exist or
+	 *                              is not primitive or Comparable, or the
+	 *                              comparator fails to compile.
+	 */
+	public <T> Comparator<T> getComparator(final Class<T> type, final SortKey... keys) throws CompilationException {
+		return getComparator(type, Arrays.asList(keys));
+	}
+
+	/**
+	 * @param type Class of the objects being sorted.
+	 * @param keys Properties to sort on, most significant first.
+	 * @return Comparator that orders by each key in turn.
+	 * @throws CompilationException Thrown if a key's property does not exist or
+	 *                              is not primitive or Comparable, or the
+	 *                              comparator fails to compile.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Comparator<T> getComparator(final Class<T> type, final List<SortKey> keys)
+			throws CompilationException {
+		Objects.requireNonNull(type, "type is null");
+		if (keys.isEmpty()) {
+			throw new IllegalArgumentException("No sort keys");
+		}
+		final List<Object> key = Arrays.asList(type, Arrays.asList(keys.toArray()));
+		final Comparator<?> cached = comparators.get(key);
+		if (cached != null) {
+			return (Comparator<T>) cached;
+		}
+
+		final Comparator<T> comparator = compiler.compileAndConstructInterface(Comparator.class,
+				new Class<?>[] { type }, getBody(type, keys));
+		return (Comparator<T>) comparators.putIfAbsent(key, comparator);
+	}
+
+	private static String getBody(final Class<?> type, final List<SortKey> keys) throws CompilationException {
+		final StringBuilder body = new StringBuilder("int c;\n");
+		for (int i = 0; i < keys.size(); ++i) {
+			final SortKey k = keys.get(i);
+			String a = "arg1";
+			String b = "arg2";
+			Class<?> current = type;
+			for (final String name : k.property.split("\\.", -1)) {
+				final Property p = Property.readable(current).get(name);
+				if (p == null) {
+					throw new CompilationException("No readable property " + name + " on " + current.getName()
+							+ " for sort key " + k);
+				}
+				a = p.read(a);
+				b = p.read(b);
+				current = p.getType();
+			}
+
+			// Descending keys swap the operands rather than negating, which would
+			// overflow for compareTo implementations that return Integer.MIN_VALUE.
+			final String first = k.descending ? "b" + i : "a" + i;
+			final String second = k.descending ? "a" + i : "b" + i;
+			if (current.isPrimitive()) {
+				final String boxed = RuntimeCompiler.toReferenceType(current).getSimpleName();
+				body.append("final ").append(current.getName()).append(" a").append(i).append(" = ").append(a)
+						.append(";\n");
+				body.append("final ").append(current.getName()).append(" b").append(i).append(" = ").append(b)
+						.append(";\n");
+				body.append("c = ").append(boxed).append(".compare(").append(first).append(", ").append(second)
+						.append(");\n");
+			} else if (Comparable.class.isAssignableFrom(current)) {
+				final String name = current.getCanonicalName();
+				body.append("final ").append(name).append(" a").append(i).append(" = ").append(a).append(";\n");
+				body.append("final ").append(name).append(" b").append(i).append(" = ").append(b).append(";\n");
+				body.append("if (a").append(i).append(" == b").append(i).append(") {\n");
+				body.append("c = 0;\n");
+				body.append("} else if (a").append(i).append(" == null) {\n");
+				body.append("return ").append(k.nullsFirst ? "-1" : "1").append(";\n");
+				body.append("} else if (b").append(i).append(" == null) {\n");
+				body.append("return ").append(k.nullsFirst ? "1" : "-1").append(";\n");
+				body.append("} else {\n");
+				body.append("c = ").append(first).append(".compareTo(").append(second).append(");\n");
+				body.append("}\n");
+			} else {
+				throw new CompilationException(
+						current.getName() + " is not primitive or Comparable for sort key " + k);
+			}
+			if (i < keys.size() - 1) {
+				body.append("if (c != 0) {\nreturn c;\n}\n");
+			}
+		}
+		body.append("return c;");
+		return body.toString();
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least recently used cache of compiled classes. Keys are content
+ * hashes of the compiled source so identical source is only ever compiled
+ * once while it remains in the cache.
+ */
+public final class CompilationCache {
+
+	private final int maxSize;
+	private final LinkedHashMap<String, Class<?>> entries;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param maxSize Maximum number of classes to keep. 0 disables caching.
+	 */
+	CompilationCache(final int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("maxSize is negative");
+		}
+		this.maxSize = maxSize;
+		entries = new LinkedHashMap<String, Class<?>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Class<?>> eldest) {
+				if (size() > CompilationCache.this.maxSize) {
+					++evictions;
+					return true;
+				} else {
+					return false;
+				}
+			}
+		};
+	}
+
+	synchronized Class<?> get(final String key) {
+		final Class<?> c = entries.get(key);
+		if (c != null) {
+			++hits;
+		} else {
+			++misses;
+		}
+		return c;
+	}
+
+	synchronized void put(final String key, final Class<?> c) {
+		// Checked under the lock so a class defined while its generation is being
+		// retired cannot outlive the retirement in the cache.
+		if (maxSize > 0 && !ClassGeneration.isRetired(c)) {
+			entries.put(key, c);
+		}
+	}
+
+	/**
+	 * Removes every class generated into generation.
+	 */
+	synchronized void removeGeneration(final ClassGeneration generation) {
+		entries.values().removeIf(c -> ClassGeneration.of(c) == generation);
+	}
+
+	/**
+	 * Removes all cached classes. Statistics are not reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+}
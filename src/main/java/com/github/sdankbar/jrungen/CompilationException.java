@@ -22,18 +22,47 @@
  */
 package com.github.sdankbar.jrungen;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class CompilationException extends Exception {
 
+	private static final long serialVersionUID = 1L;
+
+	private final Map<String, String> unitErrors;
+
 	public CompilationException(final String msg, final Throwable cause) {
 		super(msg, cause);
+		unitErrors = Collections.emptyMap();
 	}
 
 	public CompilationException(final Throwable cause) {
 		super(cause);
+		unitErrors = Collections.emptyMap();
 	}
 
 	public CompilationException(final String msg) {
 		super(msg);
+		unitErrors = Collections.emptyMap();
+	}
+
+	/**
+	 * @param msg        Exception message.
+	 * @param unitErrors Map of the name of each class that failed to compile to
+	 *                   its errors.
+	 */
+	public CompilationException(final String msg, final Map<String, String> unitErrors) {
+		super(msg);
+		this.unitErrors = Collections.unmodifiableMap(new LinkedHashMap<>(unitErrors));
+	}
+
+	/**
+	 * @return Map of the name of each class that failed to compile to its errors.
+	 *         Empty if the failure was not caused by a compilation error.
+	 */
+	public Map<String, String> getUnitErrors() {
+		return unitErrors;
 	}
 
 }
@@ -0,0 +1,58 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sets of javac options used when compiling generated code.
+ */
+public enum CompilationProfile {
+
+	/**
+	 * javac's default options.
+	 */
+	STANDARD(),
+
+	/**
+	 * Disables annotation processing, implicit compilation of referenced source
+	 * files and debug information. Generated code never needs these, and skipping
+	 * them reduces compile time.
+	 */
+	LEAN("-proc:none", "-implicit:none", "-g:none");
+
+	private final List<String> options;
+
+	private CompilationProfile(final String... options) {
+		this.options = Collections.unmodifiableList(Arrays.asList(options));
+	}
+
+	/**
+	 * @return Options passed to javac.
+	 */
+	public List<String> getOptions() {
+		return options;
+	}
+}
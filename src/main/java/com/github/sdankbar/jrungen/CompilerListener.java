@@ -0,0 +1,99 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.Collection;
+
+/**
+ * Receives events from a {@link RuntimeCompiler}, for example to collect
+ * metrics, see {@link CompilerMetrics}. Events are delivered synchronously on
+ * the thread doing the work, often a compiler thread, so implementations must
+ * be thread safe and quick. Exceptions thrown by a listener are logged and
+ * otherwise ignored.
+ */
+public interface CompilerListener {
+
+	/**
+	 * @param phase Phase that completed, successfully or not.
+	 * @param nanos Time spent in phase.
+	 */
+	default void phaseCompleted(final CompilePhase phase, final long nanos) {
+		// Ignored by default
+	}
+
+	/**
+	 * @param classNames Names of the compilation units javac compiled.
+	 */
+	default void compiled(final Collection<String> classNames) {
+		// Ignored by default
+	}
+
+	/**
+	 * @param classNames Names of the compilation units javac failed to compile.
+	 * @param e          Exception thrown for the failure.
+	 */
+	default void compilationFailed(final Collection<String> classNames, final CompilationException e) {
+		// Ignored by default
+	}
+
+	/**
+	 * @param hit True if a compiled class was found in the in memory or
+	 *            persistent cache.
+	 */
+	default void cacheLookup(final boolean hit) {
+		// Ignored by default
+	}
+
+	/**
+	 * @param priority    Priority the task was submitted with.
+	 * @param queuedNanos Time the task waited for a scheduler worker.
+	 */
+	default void taskStarted(final CompilePriority priority, final long queuedNanos) {
+		// Ignored by default
+	}
+
+	/**
+	 * @param generation    Generation the classes were defined in.
+	 * @param classCount    Number of classes defined.
+	 * @param bytecodeBytes Total size of their class files.
+	 */
+	default void classesDefined(final ClassGeneration generation, final int classCount, final long bytecodeBytes) {
+		// Ignored by default
+	}
+
+	default void generationRetired(final ClassGeneration generation) {
+		// Ignored by default
+	}
+
+	/**
+	 * Called when a reflection wrapper, such as a
+	 * {@link ReflectionInvokeWrapper}, switches to compiled code.
+	 *
+	 * @param member          The wrapped Method, Field or Constructor.
+	 * @param reflectiveCalls Approximate number of calls made through
+	 *                        reflection or MethodHandles before the switch.
+	 */
+	default void wrapperCompiled(final Object member, final long reflectiveCalls) {
+		// Ignored by default
+	}
+}
@@ -0,0 +1,366 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects metrics from a {@link RuntimeCompiler} and publishes them as an
+ * MXBean. For example, to monitor the compiler shared by the reflection
+ * wrappers:
+ *
+ * <pre>
+ * new CompilerMetrics(ReflectionInvokeWrapper.getCompiler()).register("wrappers");
+ * </pre>
+ */
+public final class CompilerMetrics implements CompilerListener, CompilerMetricsMXBean, AutoCloseable {
+
+	/**
+	 * Summary of a distribution of times.
+	 */
+	public static final class HistogramSnapshot {
+		private final long count;
+		private final double meanMillis;
+		private final double maxMillis;
+		private final double p50Millis;
+		private final double p99Millis;
+
+		@ConstructorProperties({ "count", "meanMillis", "maxMillis", "p50Millis", "p99Millis" })
+		public HistogramSnapshot(final long count, final double meanMillis, final double maxMillis,
+				final double p50Millis, final double p99Millis) {
+			this.count = count;
+			this.meanMillis = meanMillis;
+			this.maxMillis = maxMillis;
+			this.p50Millis = p50Millis;
+			this.p99Millis = p99Millis;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMeanMillis() {
+			return meanMillis;
+		}
+
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+
+		/**
+		 * @return Median, accurate to within 25%.
+		 */
+		public double getP50Millis() {
+			return p50Millis;
+		}
+
+		/**
+		 * @return 99th percentile, accurate to within 25%.
+		 */
+		public double getP99Millis() {
+			return p99Millis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", count, meanMillis,
+					p50Millis, p99Millis, maxMillis);
+		}
+	}
+
+	/**
+	 * Lock free histogram of microsecond values with four buckets per power of
+	 * two.
+	 */
+	private static final class Histogram {
+		private static final int BUCKETS = 248;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		private static int bucket(final long micros) {
+			if (micros < 4) {
+				return (int) Math.max(micros, 0);
+			}
+			final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+			final int mantissa = (int) (micros >>> (exponent - 2)) & 3;
+			return 4 * (exponent - 1) + mantissa;
+		}
+
+		private static long upperBound(final int bucket) {
+			if (bucket < 4) {
+				return bucket + 1;
+			}
+			final int exponent = bucket / 4 + 1;
+			return (long) (5 + bucket % 4) << (exponent - 2);
+		}
+
+		void record(final long nanos) {
+			buckets.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+		}
+
+		HistogramSnapshot snapshot() {
+			final long[] counts = new long[BUCKETS];
+			long n = 0;
+			for (int i = 0; i < BUCKETS; ++i) {
+				counts[i] = buckets.get(i);
+				n += counts[i];
+			}
+			final double max = maxNanos.get() / 1e6;
+			return new HistogramSnapshot(n, n == 0 ? 0 : totalNanos.sum() / 1e6 / count.sum(), max,
+					Math.min(max, percentile(counts, n, 0.50)), Math.min(max, percentile(counts, n, 0.99)));
+		}
+
+		private static double percentile(final long[] counts, final long n, final double p) {
+			final long rank = (long) Math.ceil(n * p);
+			long seen = 0;
+			for (int i = 0; i < counts.length; ++i) {
+				seen += counts[i];
+				if (seen >= rank && seen > 0) {
+					return upperBound(i) / 1e3;
+				}
+			}
+			return 0;
+		}
+	}
+
+	private final RuntimeCompiler compiler;
+	private final LongAdder compiles = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	private final Histogram generateTime = new Histogram();
+	private final Histogram javacTime = new Histogram();
+	private final Histogram defineTime = new Histogram();
+	private final Histogram queueWait = new Histogram();
+	private final LongAdder bytecodeBytes = new LongAdder();
+	private final LongAdder retiredGenerations = new LongAdder();
+	private final LongAdder wrapperCompiles = new LongAdder();
+	private final LongAdder wrapperReflectiveCalls = new LongAdder();
+	// Generations are weakly held so they can still be unloaded.
+	private final Map<ClassGeneration, Boolean> generations = Collections.synchronizedMap(new WeakHashMap<>());
+	private final List<ObjectName> registered = new ArrayList<>();
+
+	/**
+	 * Starts collecting metrics from compiler.
+	 */
+	public CompilerMetrics(final RuntimeCompiler compiler) {
+		this.compiler = Objects.requireNonNull(compiler, "compiler is null");
+		generations.put(compiler.getGeneration(), Boolean.TRUE);
+		compiler.addListener(this);
+	}
+
+	/**
+	 * Registers this as an MXBean with the platform MBean server.
+	 *
+	 * @param name Distinguishes this compiler from others.
+	 * @return The name this was registered under.
+	 * @throws JMException Thrown if name is invalid or already registered.
+	 */
+	public ObjectName register(final String name) throws JMException {
+		final ObjectName objectName = new ObjectName("com.github.sdankbar.jrungen:type=CompilerMetrics,name="
+				+ ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		synchronized (registered) {
+			registered.add(objectName);
+		}
+		return objectName;
+	}
+
+	/**
+	 * Stops collecting metrics and unregisters any MXBeans.
+	 */
+	@Override
+	public void close() throws JMException {
+		compiler.removeListener(this);
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		synchronized (registered) {
+			for (final ObjectName name : registered) {
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+			}
+			registered.clear();
+		}
+	}
+
+	@Override
+	public void phaseCompleted(final CompilePhase phase, final long nanos) {
+		switch (phase) {
+		case GENERATE:
+			generateTime.record(nanos);
+			break;
+		case JAVAC:
+			javacTime.record(nanos);
+			break;
+		default:
+			defineTime.record(nanos);
+			break;
+		}
+	}
+
+	@Override
+	public void compiled(final Collection<String> classNames) {
+		compiles.add(classNames.size());
+	}
+
+	@Override
+	public void compilationFailed(final Collection<String> classNames, final CompilationException e) {
+		failures.add(e.getUnitErrors().isEmpty() ? classNames.size() : e.getUnitErrors().size());
+	}
+
+	@Override
+	public void cacheLookup(final boolean hit) {
+		(hit ? cacheHits : cacheMisses).increment();
+	}
+
+	@Override
+	public void taskStarted(final CompilePriority priority, final long queuedNanos) {
+		queueWait.record(queuedNanos);
+	}
+
+	@Override
+	public void classesDefined(final ClassGeneration generation, final int classCount, final long bytes) {
+		generations.put(generation, Boolean.TRUE);
+		bytecodeBytes.add(bytes);
+	}
+
+	@Override
+	public void generationRetired(final ClassGeneration generation) {
+		retiredGenerations.increment();
+	}
+
+	@Override
+	public void wrapperCompiled(final Object member, final long reflectiveCalls) {
+		wrapperCompiles.increment();
+		wrapperReflectiveCalls.add(reflectiveCalls);
+	}
+
+	@Override
+	public long getCompileCount() {
+		return compiles.sum();
+	}
+
+	@Override
+	public long getCompileFailureCount() {
+		return failures.sum();
+	}
+
+	@Override
+	public long getCacheHitCount() {
+		return cacheHits.sum();
+	}
+
+	@Override
+	public long getCacheMissCount() {
+		return cacheMisses.sum();
+	}
+
+	@Override
+	public HistogramSnapshot getGenerateTime() {
+		return generateTime.snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getJavacTime() {
+		return javacTime.snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getDefineTime() {
+		return defineTime.snapshot();
+	}
+
+	@Override
+	public HistogramSnapshot getQueueWait() {
+		return queueWait.snapshot();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return compiler.getScheduler().getQueueDepth();
+	}
+
+	@Override
+	public long getLiveClassCount() {
+		long classes = 0;
+		synchronized (generations) {
+			for (final ClassGeneration g : generations.keySet()) {
+				classes += g.getClassCount();
+			}
+		}
+		return classes;
+	}
+
+	@Override
+	public long getLiveLoaderCount() {
+		long loaders = 0;
+		synchronized (generations) {
+			for (final ClassGeneration g : generations.keySet()) {
+				loaders += g.getLoaderCount();
+			}
+		}
+		return loaders;
+	}
+
+	@Override
+	public long getBytecodeBytes() {
+		return bytecodeBytes.sum();
+	}
+
+	@Override
+	public long getRetiredGenerationCount() {
+		return retiredGenerations.sum();
+	}
+
+	@Override
+	public long getWrapperCompileCount() {
+		return wrapperCompiles.sum();
+	}
+
+	@Override
+	public long getWrapperReflectiveCallCount() {
+		return wrapperReflectiveCalls.sum();
+	}
+}
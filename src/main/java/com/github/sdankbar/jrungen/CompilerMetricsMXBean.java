@@ -0,0 +1,92 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import com.github.sdankbar.jrungen.CompilerMetrics.HistogramSnapshot;
+
+/**
+ * Management interface of {@link CompilerMetrics}. Times are in milliseconds.
+ */
+public interface CompilerMetricsMXBean {
+
+	/**
+	 * @return Number of compilation units javac has compiled.
+	 */
+	long getCompileCount();
+
+	/**
+	 * @return Number of compilation units javac has failed to compile.
+	 */
+	long getCompileFailureCount();
+
+	long getCacheHitCount();
+
+	long getCacheMissCount();
+
+	HistogramSnapshot getGenerateTime();
+
+	HistogramSnapshot getJavacTime();
+
+	HistogramSnapshot getDefineTime();
+
+	/**
+	 * @return Time tasks waited for a scheduler worker.
+	 */
+	HistogramSnapshot getQueueWait();
+
+	/**
+	 * @return Number of tasks waiting for a worker of the compiler's scheduler.
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return Number of generated classes in generations that have not been
+	 *         garbage collected, including retired generations still
+	 *         referenced.
+	 */
+	long getLiveClassCount();
+
+	/**
+	 * @return Number of class loaders in generations that have not been garbage
+	 *         collected.
+	 */
+	long getLiveLoaderCount();
+
+	/**
+	 * @return Total size of all class files defined.
+	 */
+	long getBytecodeBytes();
+
+	long getRetiredGenerationCount();
+
+	/**
+	 * @return Number of reflection wrappers that switched to compiled code.
+	 */
+	long getWrapperCompileCount();
+
+	/**
+	 * @return Approximate number of calls wrappers made through reflection or
+	 *         MethodHandles before switching to compiled code.
+	 */
+	long getWrapperReflectiveCallCount();
+}
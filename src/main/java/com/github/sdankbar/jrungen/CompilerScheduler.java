@@ -0,0 +1,250 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs compilations on a bounded number of worker threads. Each javac
+ * invocation can use a lot of memory, so the number running at once is capped
+ * and queued work is ordered by {@link CompilePriority}. Once capacity tasks
+ * are queued or running, further submissions are handled according to the
+ * {@link RejectionPolicy}.
+ */
+public final class CompilerScheduler {
+
+	/**
+	 * What to do with a submission when the scheduler is at capacity.
+	 */
+	public enum RejectionPolicy {
+		/**
+		 * Throw a RejectedExecutionException.
+		 */
+		REJECT,
+		/**
+		 * Run the task on the submitting thread.
+		 */
+		CALLER_RUNS,
+		/**
+		 * Block the submitting thread until there is room.
+		 */
+		BLOCK
+	}
+
+	private static final class PrioritizedTask<V> extends FutureTask<V> implements Comparable<PrioritizedTask<?>> {
+		private final CompilePriority priority;
+		private final long sequence;
+		private final Semaphore permits;
+
+		PrioritizedTask(final Callable<V> task, final CompilePriority priority, final long sequence,
+				final Semaphore permits) {
+			super(task);
+			this.priority = priority;
+			this.sequence = sequence;
+			this.permits = permits;
+		}
+
+		@Override
+		public int compareTo(final PrioritizedTask<?> o) {
+			final int c = priority.compareTo(o.priority);
+			return c != 0 ? c : Long.compare(sequence, o.sequence);
+		}
+
+		@Override
+		protected void done() {
+			permits.release();
+		}
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(CompilerScheduler.class);
+	private static final ThreadLocal<CompilerScheduler> CURRENT = new ThreadLocal<>();
+	private static final CompilerScheduler DEFAULT = new CompilerScheduler(
+			Integer.getInteger("jrungen.compilerThreads", Math.min(4, Runtime.getRuntime().availableProcessors())),
+			Integer.getInteger("jrungen.compilerQueueCapacity", 1024), RejectionPolicy.BLOCK,
+			Boolean.getBoolean("jrungen.compilerVirtualThreads"));
+
+	/**
+	 * @return Scheduler shared by RuntimeCompilers that have not been given one.
+	 *         Its size can be set with the jrungen.compilerThreads,
+	 *         jrungen.compilerQueueCapacity and jrungen.compilerVirtualThreads
+	 *         system properties.
+	 */
+	public static CompilerScheduler getDefault() {
+		return DEFAULT;
+	}
+
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			final Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (final ReflectiveOperationException e) {
+			log.warn("Virtual threads are not available, using platform threads");
+			return null;
+		}
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final Semaphore permits;
+	private final RejectionPolicy policy;
+	private final int capacity;
+	private final AtomicLong sequence = new AtomicLong();
+
+	/**
+	 * @param workers  Maximum number of compilations run at once.
+	 * @param capacity Maximum number of tasks queued or running.
+	 * @param policy   What to do with submissions past capacity.
+	 */
+	public CompilerScheduler(final int workers, final int capacity, final RejectionPolicy policy) {
+		this(workers, capacity, policy, false);
+	}
+
+	/**
+	 * @param workers        Maximum number of compilations run at once.
+	 * @param capacity       Maximum number of tasks queued or running.
+	 * @param policy         What to do with submissions past capacity.
+	 * @param virtualThreads Run compilations on virtual threads when the JVM
+	 *                       supports them. The number running at once is still
+	 *                       limited to workers.
+	 */
+	public CompilerScheduler(final int workers, final int capacity, final RejectionPolicy policy,
+			final boolean virtualThreads) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be positive");
+		}
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.policy = Objects.requireNonNull(policy, "policy is null");
+		this.capacity = capacity;
+		permits = new Semaphore(capacity);
+
+		final ThreadFactory virtualFactory = virtualThreads ? virtualThreadFactory() : null;
+		final ThreadFactory factory = r -> {
+			final Runnable worker = () -> {
+				CURRENT.set(this);
+				r.run();
+			};
+			final Thread t;
+			if (virtualFactory != null) {
+				t = virtualFactory.newThread(worker);
+			} else {
+				t = Executors.defaultThreadFactory().newThread(worker);
+				t.setDaemon(true);
+			}
+			t.setName("jrungen-compiler-" + t.getId());
+			return t;
+		};
+		executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+				factory);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @param task     Task to run.
+	 * @param priority Priority relative to other queued tasks.
+	 * @return Future for the result of task.
+	 * @throws RejectedExecutionException Thrown if the scheduler is at capacity
+	 *                                    and the policy is REJECT, or the
+	 *                                    submitting thread is interrupted while
+	 *                                    blocked.
+	 */
+	public <V> Future<V> submit(final Callable<V> task, final CompilePriority priority) {
+		Objects.requireNonNull(task, "task is null");
+		Objects.requireNonNull(priority, "priority is null");
+		if (!permits.tryAcquire()) {
+			switch (policy) {
+			case CALLER_RUNS: {
+				final FutureTask<V> f = new FutureTask<>(task);
+				f.run();
+				return f;
+			}
+			case BLOCK:
+				try {
+					permits.acquire();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException("Interrupted waiting for compiler capacity", e);
+				}
+				break;
+			case REJECT:
+			default:
+				throw new RejectedExecutionException("Compiler queue is full (" + capacity + " tasks)");
+			}
+		}
+
+		final PrioritizedTask<V> f = new PrioritizedTask<>(task, priority, sequence.getAndIncrement(), permits);
+		try {
+			executor.execute(f);
+		} catch (final RejectedExecutionException e) {
+			permits.release();
+			throw e;
+		}
+		return f;
+	}
+
+	/**
+	 * @return Number of tasks waiting for a worker.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return Number of tasks currently being compiled.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return True if the calling thread is one of this scheduler's workers.
+	 *         Work submitted from a worker and then waited on could deadlock, so
+	 *         callers in that position should run it directly.
+	 */
+	boolean isWorkerThread() {
+		return CURRENT.get() == this;
+	}
+
+	/**
+	 * Stops accepting tasks. Queued tasks are still run.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
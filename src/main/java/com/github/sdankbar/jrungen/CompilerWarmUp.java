@@ -0,0 +1,184 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles representative generated code until compile times stop improving.
+ * javac, its class loading and the JIT are shared by every compiler in the
+ * JVM, so warmth is tracked once per JVM.
+ */
+final class CompilerWarmUp {
+
+	private static final Logger log = LoggerFactory.getLogger(CompilerWarmUp.class);
+
+	static final int MIN_ROUNDS = 5;
+	static final int MAX_ROUNDS = 40;
+	// A round is stable when the last WINDOW rounds are within TOLERANCE of each
+	// other.
+	private static final int WINDOW = 3;
+	private static final double TOLERANCE = 1.25;
+
+	private static final AtomicReference<CompletableFuture<Void>> running = new AtomicReference<>();
+	private static volatile boolean warm = false;
+
+	static boolean isWarm() {
+		return warm;
+	}
+
+	/**
+	 * Runs the warm-up on the calling thread.
+	 */
+	static void run(final RuntimeCompiler owner) throws CompilationException {
+		final CompilerWarmUp w = new CompilerWarmUp(owner);
+		try {
+			while (!w.round()) {
+				// Keep compiling until stable.
+			}
+		} finally {
+			w.finish();
+		}
+	}
+
+	/**
+	 * Runs the warm-up as a series of background tasks on the owner's
+	 * scheduler, so compilations with a higher priority run between rounds. Only
+	 * one warm-up runs at a time and a failed one may be started again.
+	 */
+	static CompletableFuture<Void> start(final RuntimeCompiler owner) {
+		final CompletableFuture<Void> created = new CompletableFuture<>();
+		final CompletableFuture<Void> existing = running.get();
+		if (existing != null && !existing.isCompletedExceptionally()) {
+			return existing.thenApply(Function.identity());
+		}
+		if (!running.compareAndSet(existing, created)) {
+			return running.get().thenApply(Function.identity());
+		}
+
+		if (warm) {
+			created.complete(null);
+		} else {
+			schedule(owner, new CompilerWarmUp(owner), created);
+		}
+		return created.thenApply(Function.identity());
+	}
+
+	private static void schedule(final RuntimeCompiler owner, final CompilerWarmUp w,
+			final CompletableFuture<Void> done) {
+		try {
+			owner.submit(() -> {
+				try {
+					if (w.round()) {
+						w.finish();
+						done.complete(null);
+					} else {
+						schedule(owner, w, done);
+					}
+				} catch (final Throwable e) {
+					w.finish();
+					done.completeExceptionally(e);
+				}
+				return null;
+			}, CompilePriority.BACKGROUND);
+		} catch (final RejectedExecutionException e) {
+			w.finish();
+			done.completeExceptionally(e);
+		}
+	}
+
+	private final RuntimeCompiler compiler;
+	private final long[] roundNanos = new long[MAX_ROUNDS];
+	private int rounds = 0;
+	private boolean failed = true;
+
+	private CompilerWarmUp(final RuntimeCompiler owner) {
+		// A separate compiler keeps the synthetic classes out of the owner's cache,
+		// generation and listeners.
+		compiler = new RuntimeCompiler(0);
+		compiler.setScheduler(owner.getScheduler());
+		compiler.setProfile(owner.getProfile());
+	}
+
+	/**
+	 * Compiles and calls one set of synthetic classes. Each round uses unique
+	 * sources so nothing is served from a cache.
+	 *
+	 * @return True if warm-up is done.
+	 */
+	boolean round() throws CompilationException {
+		final int n = rounds;
+		final long start = System.nanoTime();
+
+		final Function<String, Integer> length = compiler.compileAndConstructFunctionalInterface(String.class,
+				Integer.class, "return arg.length() + " + n + ";");
+		final BiFunction<Integer, Integer, Integer> multiply = compiler.compileAndConstructBiFunctionalInterface(
+				Integer.class, Integer.class, Integer.class, "return arg1 * arg2 + " + n + ";");
+		final IntBinaryOperator max = compiler.compileAndConstructInterface(IntBinaryOperator.class,
+				"return Math.max(arg1, arg2) + " + n + ";");
+		final Map<String, String> batch = new LinkedHashMap<>();
+		batch.put("WarmUpCaller" + n, "public class WarmUpCaller" + n
+				+ " implements java.util.function.Supplier<Object> {\n" + "public Object get() {\n"
+				+ "return java.util.Arrays.asList(\"a\", \"b\").subList(0, " + (n % 2) + ");\n" + "}\n" + "}\n");
+		batch.put("WarmUpHolder" + n, "public class WarmUpHolder" + n + " {\n" + "public static final int VALUE = "
+				+ n + ";\n" + "}\n");
+		compiler.compileAll(batch);
+
+		if (length.apply("") + multiply.apply(0, 0) + max.applyAsInt(0, 0) != 3 * n) {
+			throw new CompilationException("Warm-up round " + n + " produced an unexpected result");
+		}
+
+		roundNanos[rounds++] = System.nanoTime() - start;
+		if (rounds >= MAX_ROUNDS || (rounds >= MIN_ROUNDS && isStable())) {
+			failed = false;
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isStable() {
+		final long[] window = Arrays.copyOfRange(roundNanos, rounds - WINDOW, rounds);
+		Arrays.sort(window);
+		return window[WINDOW - 1] <= window[0] * TOLERANCE;
+	}
+
+	private void finish() {
+		compiler.retireGeneration(compiler.getGeneration());
+		if (!failed) {
+			warm = true;
+			log.info("Compiler warm after " + rounds + " rounds, last round took "
+					+ roundNanos[rounds - 1] / 1_000_000 + " ms");
+		}
+	}
+}
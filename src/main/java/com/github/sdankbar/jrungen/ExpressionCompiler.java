@@ -0,0 +1,341 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+import com.github.sdankbar.jrungen.ExpressionParser.Binary;
+import com.github.sdankbar.jrungen.ExpressionParser.Call;
+import com.github.sdankbar.jrungen.ExpressionParser.Literal;
+import com.github.sdankbar.jrungen.ExpressionParser.Node;
+import com.github.sdankbar.jrungen.ExpressionParser.Path;
+import com.github.sdankbar.jrungen.ExpressionParser.Unary;
+
+/**
+ * Compiles expressions such as {@code price * quantity > 100 && customer.name != null}
+ * into Predicates and ToDoubleFunctions.
+ *
+ * Expressions are made of property paths read from the argument (public
+ * getters or fields, see {@link BeanMapperGenerator}), number, string, boolean
+ * and null literals, arithmetic (+ - * / %), comparisons (== != &lt; &lt;= &gt;
+ * &gt;=), boolean logic (&amp;&amp; || !) and calls to abs, sqrt, floor, ceil,
+ * exp, log, min, max, pow, length, startsWith, endsWith and contains. All
+ * arithmetic is done in double. A null value part way along a property path
+ * throws a NullPointerException.
+ *
+ * Both parsed expressions and compiled functions are cached by normalized
+ * expression, so expressions that only differ in whitespace or redundant
+ * parentheses share a class.
+ */
+public final class ExpressionCompiler {
+
+	private static final int MAX_PARSED = 1024;
+
+	private enum Kind {
+		NUMBER, BOOLEAN, STRING, OBJECT, NULL
+	}
+
+	/**
+	 * Java source for a node and the kind of value it produces.
+	 */
+	private static final class Code {
+		private final String java;
+		private final Kind kind;
+
+		private Code(final String java, final Kind kind) {
+			this.java = java;
+			this.kind = kind;
+		}
+	}
+
+	private final RuntimeCompiler compiler;
+	private final Map<String, Node> parsed = new LinkedHashMap<String, Node>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Node> eldest) {
+			return size() > MAX_PARSED;
+		}
+	};
+	private final GeneratedInstanceCache<List<Object>, Object> compiled = new GeneratedInstanceCache<>();
+
+	/**
+	 * @param compiler Compiler used to compile expressions.
+	 */
+	public ExpressionCompiler(final RuntimeCompiler compiler) {
+		this.compiler = Objects.requireNonNull(compiler, "compiler is null");
+	}
+
+	/**
+	 * @return expression fully parenthesized with canonical spacing.
+	 * @throws CompilationException Thrown if expression is malformed.
+	 */
+	public String normalize(final String expression) throws CompilationException {
+		return parse(expression).toString();
+	}
+
+	/**
+	 * @param type       Type of the Predicate's argument.
+	 * @param expression Boolean expression over the properties of type.
+	 * @return Predicate that evaluates expression.
+	 * @throws CompilationException Thrown if expression is malformed, refers to
+	 *                              unknown properties or functions, or is not
+	 *                              boolean.
+	 */
+	public <T> Predicate<T> compilePredicate(final Class<T> type, final String expression)
+			throws CompilationException {
+		return compile(type, Predicate.class, Kind.BOOLEAN, expression);
+	}
+
+	/**
+	 * @param type       Type of the function's argument.
+	 * @param expression Numeric expression over the properties of type.
+	 * @return ToDoubleFunction that evaluates expression.
+	 * @throws CompilationException Thrown if expression is malformed, refers to
+	 *                              unknown properties or functions, or is not
+	 *                              numeric.
+	 */
+	public <T> ToDoubleFunction<T> compileToDouble(final Class<T> type, final String expression)
+			throws CompilationException {
+		return compile(type, ToDoubleFunction.class, Kind.NUMBER, expression);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <I> I compile(final Class<?> type, final Class<?> functionalInterface, final Kind kind,
+			final String expression) throws CompilationException {
+		final Node root = parse(expression);
+		final List<Object> key = Arrays.asList(type, functionalInterface, root.toString());
+		final Object cached = compiled.get(key);
+		if (cached != null) {
+			return (I) cached;
+		}
+
+		final Code code = generate(root, type);
+		if (code.kind != kind) {
+			throw new CompilationException("Expected a " + kind.name().toLowerCase() + " expression but \""
+					+ expression + "\" is " + code.kind.name().toLowerCase());
+		}
+		final Object function = compiler.compileAndConstructInterface(functionalInterface, new Class<?>[] { type },
+				"return " + code.java + ";");
+		return (I) compiled.putIfAbsent(key, function);
+	}
+
+	private Node parse(final String expression) throws CompilationException {
+		Objects.requireNonNull(expression, "expression is null");
+		synchronized (parsed) {
+			final Node cached = parsed.get(expression);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		final Node root = ExpressionParser.parse(expression);
+		synchronized (parsed) {
+			parsed.put(expression, root);
+		}
+		return root;
+	}
+
+	private static Code generate(final Node node, final Class<?> type) throws CompilationException {
+		if (node instanceof Literal) {
+			return literal(((Literal) node).value);
+		} else if (node instanceof Path) {
+			return path((Path) node, type);
+		} else if (node instanceof Unary) {
+			final Unary u = (Unary) node;
+			final Code operand = generate(u.operand, type);
+			final Kind expected = u.op.equals("!") ? Kind.BOOLEAN : Kind.NUMBER;
+			require(operand, expected, u);
+			return new Code("(" + u.op + operand.java + ")", expected);
+		} else if (node instanceof Binary) {
+			return binary((Binary) node, type);
+		} else {
+			return call((Call) node, type);
+		}
+	}
+
+	private static Code literal(final Object value) {
+		if (value == null) {
+			return new Code("null", Kind.NULL);
+		} else if (value instanceof Double) {
+			return new Code(value.toString(), Kind.NUMBER);
+		} else if (value instanceof Boolean) {
+			return new Code(value.toString(), Kind.BOOLEAN);
+		}
+
+		final StringBuilder b = new StringBuilder("\"");
+		for (final char c : ((String) value).toCharArray()) {
+			if (c == '"' || c == '\\') {
+				b.append('\\').append(c);
+			} else if (c == '\n') {
+				b.append("\\n");
+			} else if (c == '\r') {
+				b.append("\\r");
+			} else if (c == '\t') {
+				b.append("\\t");
+			} else if (c == '\b') {
+				b.append("\\b");
+			} else if (c == '\f') {
+				b.append("\\f");
+			} else if (c < ' ') {
+				// javac translates unicode escapes before lexing, so an escaped line
+				// break would end the string literal.
+				b.append(String.format("\\%03o", (int) c));
+			} else if (c > '~') {
+				b.append(String.format("\\u%04x", (int) c));
+			} else {
+				b.append(c);
+			}
+		}
+		return new Code(b.append('"').toString(), Kind.STRING);
+	}
+
+	private static Code path(final Path path, final Class<?> type) throws CompilationException {
+		String java = SingleAbstractMethod.parameterName(0, 1);
+		Class<?> current = type;
+		for (final String name : path.names) {
+			final Property p = Property.readable(current).get(name);
+			if (p == null) {
+				throw new CompilationException("No readable property " + name + " on " + current.getName()
+						+ " in " + path);
+			}
+			java = p.read(java);
+			current = p.getType();
+		}
+
+		final Class<?> boxed = RuntimeCompiler.toReferenceType(current);
+		if (boxed.equals(Boolean.class)) {
+			return new Code(java, Kind.BOOLEAN);
+		} else if (boxed.equals(String.class)) {
+			return new Code(java, Kind.STRING);
+		} else if (boxed.equals(Integer.class) || boxed.equals(Long.class) || boxed.equals(Double.class)
+				|| boxed.equals(Float.class) || boxed.equals(Short.class) || boxed.equals(Byte.class)) {
+			return new Code("((double) " + java + ")", Kind.NUMBER);
+		} else {
+			return new Code(java, Kind.OBJECT);
+		}
+	}
+
+	private static Code binary(final Binary b, final Class<?> type) throws CompilationException {
+		final Code l = generate(b.left, type);
+		final Code r = generate(b.right, type);
+		switch (b.op) {
+		case "&&":
+		case "||":
+			require(l, Kind.BOOLEAN, b.left);
+			require(r, Kind.BOOLEAN, b.right);
+			return new Code("(" + l.java + " " + b.op + " " + r.java + ")", Kind.BOOLEAN);
+		case "+":
+			if (l.kind == Kind.STRING || r.kind == Kind.STRING) {
+				return new Code("(\"\" + " + l.java + " + " + r.java + ")", Kind.STRING);
+			}
+			// Fall through to numeric arithmetic.
+		case "-":
+		case "*":
+		case "/":
+		case "%":
+			require(l, Kind.NUMBER, b.left);
+			require(r, Kind.NUMBER, b.right);
+			return new Code("(" + l.java + " " + b.op + " " + r.java + ")", Kind.NUMBER);
+		case "==":
+		case "!=":
+			if (l.kind == Kind.NULL || r.kind == Kind.NULL) {
+				if (l.kind == Kind.NUMBER || r.kind == Kind.NUMBER || l.kind == Kind.BOOLEAN
+						|| r.kind == Kind.BOOLEAN) {
+					throw new CompilationException("Cannot compare " + b + " with null");
+				}
+				return new Code("(" + l.java + " " + b.op + " " + r.java + ")", Kind.BOOLEAN);
+			} else if ((l.kind == Kind.NUMBER || l.kind == Kind.BOOLEAN) && l.kind == r.kind) {
+				return new Code("(" + l.java + " " + b.op + " " + r.java + ")", Kind.BOOLEAN);
+			} else if ((l.kind == Kind.STRING || l.kind == Kind.OBJECT)
+					&& (r.kind == Kind.STRING || r.kind == Kind.OBJECT)) {
+				return new Code((b.op.equals("!=") ? "!" : "") + "java.util.Objects.equals(" + l.java + ", " + r.java
+						+ ")", Kind.BOOLEAN);
+			}
+			throw new CompilationException("Cannot compare " + l.kind + " and " + r.kind + " in " + b);
+		default:
+			// Ordering comparisons.
+			if (l.kind == Kind.STRING && r.kind == Kind.STRING) {
+				return new Code("(" + l.java + ".compareTo(" + r.java + ") " + b.op + " 0)", Kind.BOOLEAN);
+			}
+			require(l, Kind.NUMBER, b.left);
+			require(r, Kind.NUMBER, b.right);
+			return new Code("(" + l.java + " " + b.op + " " + r.java + ")", Kind.BOOLEAN);
+		}
+	}
+
+	private static Code call(final Call c, final Class<?> type) throws CompilationException {
+		final Code[] args = new Code[c.args.size()];
+		for (int i = 0; i < args.length; ++i) {
+			args[i] = generate(c.args.get(i), type);
+		}
+
+		switch (c.function) {
+		case "abs":
+		case "sqrt":
+		case "floor":
+		case "ceil":
+		case "exp":
+		case "log":
+			requireArgs(c, args, Kind.NUMBER);
+			return new Code("Math." + c.function + "(" + args[0].java + ")", Kind.NUMBER);
+		case "min":
+		case "max":
+		case "pow":
+			requireArgs(c, args, Kind.NUMBER, Kind.NUMBER);
+			return new Code("Math." + c.function + "(" + args[0].java + ", " + args[1].java + ")", Kind.NUMBER);
+		case "length":
+			requireArgs(c, args, Kind.STRING);
+			return new Code("((double) " + args[0].java + ".length())", Kind.NUMBER);
+		case "startsWith":
+		case "endsWith":
+		case "contains":
+			requireArgs(c, args, Kind.STRING, Kind.STRING);
+			return new Code(args[0].java + "." + c.function + "(" + args[1].java + ")", Kind.BOOLEAN);
+		default:
+			throw new CompilationException("Unknown function " + c.function + " in " + c);
+		}
+	}
+
+	private static void require(final Code code, final Kind kind, final Node node) throws CompilationException {
+		if (code.kind != kind) {
+			throw new CompilationException("Expected a " + kind.name().toLowerCase() + " but " + node + " is "
+					+ code.kind.name().toLowerCase());
+		}
+	}
+
+	private static void requireArgs(final Call c, final Code[] args, final Kind... kinds)
+			throws CompilationException {
+		if (args.length != kinds.length) {
+			throw new CompilationException(c.function + " takes " + kinds.length + " arguments in " + c);
+		}
+		for (int i = 0; i < kinds.length; ++i) {
+			require(args[i], kinds[i], c.args.get(i));
+		}
+	}
+}
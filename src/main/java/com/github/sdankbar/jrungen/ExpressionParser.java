@@ -0,0 +1,386 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses the expression language used by {@link ExpressionCompiler} into a
+ * tree of {@link Node}s. The string form of a tree is its normalized
+ * expression: fully parenthesized, with canonical spacing and number formats,
+ * so expressions that differ only in layout normalize to the same string.
+ *
+ * <pre>
+ * or      := and ('||' and)*
+ * and     := compare ('&amp;&amp;' compare)*
+ * compare := add (('==' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=') add)?
+ * add     := mul (('+' | '-') mul)*
+ * mul     := unary (('*' | '/' | '%') unary)*
+ * unary   := ('!' | '-') unary | primary
+ * primary := number | string | 'true' | 'false' | 'null' | name '(' args ')'
+ *          | name ('.' name)* | '(' or ')'
+ * </pre>
+ */
+final class ExpressionParser {
+
+	/**
+	 * A node in a parsed expression.
+	 */
+	abstract static class Node {
+		// Marker base class, the subclasses hold the data.
+	}
+
+	/**
+	 * A number (Double), string, boolean or null.
+	 */
+	static final class Literal extends Node {
+		final Object value;
+
+		Literal(final Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public String toString() {
+			if (value instanceof String) {
+				return "'" + ((String) value).replace("\\", "\\\\").replace("'", "\\'") + "'";
+			}
+			return String.valueOf(value);
+		}
+	}
+
+	/**
+	 * A chain of property names read from the expression's argument.
+	 */
+	static final class Path extends Node {
+		final List<String> names;
+
+		Path(final List<String> names) {
+			this.names = Collections.unmodifiableList(names);
+		}
+
+		@Override
+		public String toString() {
+			return String.join(".", names);
+		}
+	}
+
+	static final class Unary extends Node {
+		final String op;
+		final Node operand;
+
+		Unary(final String op, final Node operand) {
+			this.op = op;
+			this.operand = operand;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + op + operand + ")";
+		}
+	}
+
+	static final class Binary extends Node {
+		final String op;
+		final Node left;
+		final Node right;
+
+		Binary(final String op, final Node left, final Node right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + left + " " + op + " " + right + ")";
+		}
+	}
+
+	static final class Call extends Node {
+		final String function;
+		final List<Node> args;
+
+		Call(final String function, final List<Node> args) {
+			this.function = function;
+			this.args = Collections.unmodifiableList(args);
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder b = new StringBuilder(function).append('(');
+			for (int i = 0; i < args.size(); ++i) {
+				b.append(i > 0 ? ", " : "").append(args.get(i));
+			}
+			return b.append(')').toString();
+		}
+	}
+
+	private static final List<String> OPERATORS = Arrays.asList("&&", "||", "==", "!=", "<=", ">=", "<", ">", "+",
+			"-", "*", "/", "%", "!", "(", ")", ",", ".");
+
+	/**
+	 * @return Root of the parsed expression.
+	 * @throws CompilationException Thrown if the expression is malformed.
+	 */
+	static Node parse(final String expression) throws CompilationException {
+		final ExpressionParser p = new ExpressionParser(expression);
+		final Node root = p.parseOr();
+		if (p.token != null) {
+			throw p.error("Unexpected '" + p.token + "'");
+		}
+		return root;
+	}
+
+	private final String text;
+	private int position = 0;
+	private int tokenStart = 0;
+	// Current token, null at the end of the text. Strings keep their quote.
+	private String token;
+
+	private ExpressionParser(final String text) throws CompilationException {
+		this.text = text;
+		next();
+	}
+
+	/**
+	 * Only ASCII digits, other Unicode digits are not valid in a Java literal.
+	 */
+	private static boolean isDigit(final char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private CompilationException error(final String msg) {
+		return new CompilationException(msg + " at position " + tokenStart + " in \"" + text + "\"");
+	}
+
+	private void next() throws CompilationException {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			++position;
+		}
+		tokenStart = position;
+		if (position >= text.length()) {
+			token = null;
+			return;
+		}
+
+		final char c = text.charAt(position);
+		if (isDigit(c)) {
+			boolean fraction = false;
+			while (position < text.length() && (isDigit(text.charAt(position))
+					|| text.charAt(position) == '.' && position + 1 < text.length()
+							&& isDigit(text.charAt(position + 1)))) {
+				if (text.charAt(position) == '.') {
+					if (fraction) {
+						throw error("Malformed number");
+					}
+					fraction = true;
+				}
+				++position;
+			}
+			if (position < text.length() && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+				++position;
+				if (position < text.length() && (text.charAt(position) == '+' || text.charAt(position) == '-')) {
+					++position;
+				}
+				if (position >= text.length() || !isDigit(text.charAt(position))) {
+					throw error("Exponent has no digits");
+				}
+				while (position < text.length() && isDigit(text.charAt(position))) {
+					++position;
+				}
+			}
+		} else if (Character.isJavaIdentifierStart(c)) {
+			while (position < text.length() && Character.isJavaIdentifierPart(text.charAt(position))) {
+				++position;
+			}
+		} else if (c == '\'' || c == '"') {
+			++position;
+			while (position < text.length() && text.charAt(position) != c) {
+				position += text.charAt(position) == '\\' ? 2 : 1;
+			}
+			if (position >= text.length()) {
+				throw error("Unterminated string");
+			}
+			++position;
+		} else {
+			for (final String op : OPERATORS) {
+				if (text.startsWith(op, position)) {
+					position += op.length();
+					token = op;
+					return;
+				}
+			}
+			throw error("Unexpected character '" + c + "'");
+		}
+		token = text.substring(tokenStart, position);
+	}
+
+	private boolean accept(final String expected) throws CompilationException {
+		if (expected.equals(token)) {
+			next();
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(final String expected) throws CompilationException {
+		if (!accept(expected)) {
+			throw error("Expected '" + expected + "'");
+		}
+	}
+
+	private Node parseOr() throws CompilationException {
+		Node left = parseAnd();
+		while (accept("||")) {
+			left = new Binary("||", left, parseAnd());
+		}
+		return left;
+	}
+
+	private Node parseAnd() throws CompilationException {
+		Node left = parseCompare();
+		while (accept("&&")) {
+			left = new Binary("&&", left, parseCompare());
+		}
+		return left;
+	}
+
+	private Node parseCompare() throws CompilationException {
+		final Node left = parseAdd();
+		for (final String op : new String[] { "==", "!=", "<=", ">=", "<", ">" }) {
+			if (accept(op)) {
+				return new Binary(op, left, parseAdd());
+			}
+		}
+		return left;
+	}
+
+	private Node parseAdd() throws CompilationException {
+		Node left = parseMul();
+		while (true) {
+			if (accept("+")) {
+				left = new Binary("+", left, parseMul());
+			} else if (accept("-")) {
+				left = new Binary("-", left, parseMul());
+			} else {
+				return left;
+			}
+		}
+	}
+
+	private Node parseMul() throws CompilationException {
+		Node left = parseUnary();
+		while (true) {
+			if (accept("*")) {
+				left = new Binary("*", left, parseUnary());
+			} else if (accept("/")) {
+				left = new Binary("/", left, parseUnary());
+			} else if (accept("%")) {
+				left = new Binary("%", left, parseUnary());
+			} else {
+				return left;
+			}
+		}
+	}
+
+	private Node parseUnary() throws CompilationException {
+		if (accept("!")) {
+			return new Unary("!", parseUnary());
+		} else if (accept("-")) {
+			return new Unary("-", parseUnary());
+		}
+		return parsePrimary();
+	}
+
+	private Node parsePrimary() throws CompilationException {
+		final String t = token;
+		if (t == null) {
+			throw error("Unexpected end of expression");
+		} else if (accept("(")) {
+			final Node inner = parseOr();
+			expect(")");
+			return inner;
+		} else if (isDigit(t.charAt(0))) {
+			final Double value;
+			try {
+				value = Double.valueOf(t);
+			} catch (final NumberFormatException e) {
+				throw error("Malformed number");
+			}
+			if (value.isInfinite()) {
+				throw error("Number out of range");
+			}
+			next();
+			return new Literal(value);
+		} else if (t.charAt(0) == '\'' || t.charAt(0) == '"') {
+			next();
+			return new Literal(unescape(t.substring(1, t.length() - 1)));
+		} else if (!Character.isJavaIdentifierStart(t.charAt(0))) {
+			throw error("Unexpected '" + t + "'");
+		}
+
+		next();
+		if (t.equals("true") || t.equals("false")) {
+			return new Literal(Boolean.valueOf(t));
+		} else if (t.equals("null")) {
+			return new Literal(null);
+		} else if (accept("(")) {
+			final List<Node> args = new ArrayList<>();
+			if (!accept(")")) {
+				do {
+					args.add(parseOr());
+				} while (accept(","));
+				expect(")");
+			}
+			return new Call(t, args);
+		}
+
+		final List<String> names = new ArrayList<>();
+		names.add(t);
+		while (accept(".")) {
+			if (token == null || !Character.isJavaIdentifierStart(token.charAt(0))) {
+				throw error("Expected a property name");
+			}
+			names.add(token);
+			next();
+		}
+		return new Path(names);
+	}
+
+	private static String unescape(final String s) {
+		final StringBuilder b = new StringBuilder();
+		for (int i = 0; i < s.length(); ++i) {
+			final char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				b.append(s.charAt(++i));
+			} else {
+				b.append(c);
+			}
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.function.Function;
+
+/**
+ * Fixed arity interfaces for calling constructors without allocating an
+ * argument array.
+ */
+public final class Factories {
+
+	/**
+	 * Largest number of constructor parameters with a fixed arity factory.
+	 */
+	public static final int MAX_ARITY = 6;
+
+	@FunctionalInterface
+	public interface Factory0<R> {
+		R create();
+	}
+
+	@FunctionalInterface
+	public interface Factory1<R> {
+		R create(Object a);
+	}
+
+	@FunctionalInterface
+	public interface Factory2<R> {
+		R create(Object a, Object b);
+	}
+
+	@FunctionalInterface
+	public interface Factory3<R> {
+		R create(Object a, Object b, Object c);
+	}
+
+	@FunctionalInterface
+	public interface Factory4<R> {
+		R create(Object a, Object b, Object c, Object d);
+	}
+
+	@FunctionalInterface
+	public interface Factory5<R> {
+		R create(Object a, Object b, Object c, Object d, Object e);
+	}
+
+	@FunctionalInterface
+	public interface Factory6<R> {
+		R create(Object a, Object b, Object c, Object d, Object e, Object f);
+	}
+
+	/**
+	 * @param arity Number of constructor parameters.
+	 * @return The factory interface for constructors with that many parameters.
+	 */
+	public static Class<?> forArity(final int arity) {
+		switch (arity) {
+		case 0:
+			return Factory0.class;
+		case 1:
+			return Factory1.class;
+		case 2:
+			return Factory2.class;
+		case 3:
+			return Factory3.class;
+		case 4:
+			return Factory4.class;
+		case 5:
+			return Factory5.class;
+		case 6:
+			return Factory6.class;
+		default:
+			throw new IllegalArgumentException("No factory for arity " + arity);
+		}
+	}
+
+	/**
+	 * @param factory Instance of the factory interface for arity.
+	 * @param arity   Number of constructor parameters.
+	 * @return Function that unpacks an argument array and calls factory.
+	 */
+	@SuppressWarnings("unchecked")
+	static <R> Function<Object[], R> toArrayFactory(final Object factory, final int arity) {
+		switch (arity) {
+		case 0:
+			return a -> ((Factory0<R>) factory).create();
+		case 1:
+			return a -> ((Factory1<R>) factory).create(a[0]);
+		case 2:
+			return a -> ((Factory2<R>) factory).create(a[0], a[1]);
+		case 3:
+			return a -> ((Factory3<R>) factory).create(a[0], a[1], a[2]);
+		case 4:
+			return a -> ((Factory4<R>) factory).create(a[0], a[1], a[2], a[3]);
+		case 5:
+			return a -> ((Factory5<R>) factory).create(a[0], a[1], a[2], a[3], a[4]);
+		case 6:
+			return a -> ((Factory6<R>) factory).create(a[0], a[1], a[2], a[3], a[4], a[5]);
+		default:
+			throw new IllegalArgumentException("No factory for arity " + arity);
+		}
+	}
+
+	/**
+	 * @param factory Factory that takes an argument array.
+	 * @param arity   Number of constructor parameters.
+	 * @return Factory for arity that packs its arguments into an array and calls
+	 *         factory.
+	 */
+	static <R> Object fromArrayFactory(final Function<Object[], R> factory, final int arity) {
+		switch (arity) {
+		case 0:
+			return (Factory0<R>) () -> factory.apply(new Object[0]);
+		case 1:
+			return (Factory1<R>) a -> factory.apply(new Object[] { a });
+		case 2:
+			return (Factory2<R>) (a, b) -> factory.apply(new Object[] { a, b });
+		case 3:
+			return (Factory3<R>) (a, b, c) -> factory.apply(new Object[] { a, b, c });
+		case 4:
+			return (Factory4<R>) (a, b, c, d) -> factory.apply(new Object[] { a, b, c, d });
+		case 5:
+			return (Factory5<R>) (a, b, c, d, e) -> factory.apply(new Object[] { a, b, c, d, e });
+		case 6:
+			return (Factory6<R>) (a, b, c, d, e, f) -> factory.apply(new Object[] { a, b, c, d, e, f });
+		default:
+			return null;
+		}
+	}
+
+	private Factories() {
+		// Static only
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic.Kind;
+
+/**
+ * Generates callers for methods annotated with {@link FastInvoke} at build time,
+ * so they are not compiled at runtime. Registered as a service, so it runs when
+ * this library is on the compile or annotation processor path.
+ *
+ * Each caller implements BiFunction like
+ * {@link RuntimeCompiler#compileMethodCaller(java.lang.reflect.Method)} and,
+ * for methods with at most {@link Invokers#MAX_ARITY} parameters, the fixed
+ * arity invoker used by {@link ReflectionInvokeWrapper}. It is named by
+ * {@link PrecompiledCallers#className} so the runtime can find it.
+ */
+@SupportedAnnotationTypes("com.github.sdankbar.jrungen.FastInvoke")
+public class FastInvokeProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		for (final Element e : roundEnv.getElementsAnnotatedWith(FastInvoke.class)) {
+			final ExecutableElement method = (ExecutableElement) e;
+			final String error = getError(method);
+			if (error != null) {
+				processingEnv.getMessager().printMessage(Kind.ERROR, error, method);
+			} else {
+				write(method);
+			}
+		}
+		return true;
+	}
+
+	private static String getError(final ExecutableElement method) {
+		if (method.getModifiers().contains(Modifier.PRIVATE)) {
+			return "@FastInvoke method " + method.getSimpleName() + " must not be private";
+		}
+		for (Element e = method.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()) {
+			final TypeElement type = (TypeElement) e;
+			if (type.getModifiers().contains(Modifier.PRIVATE)) {
+				return "@FastInvoke method " + method.getSimpleName() + " is in private class " + type;
+			} else if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+				return "@FastInvoke method " + method.getSimpleName() + " is in a local or anonymous class";
+			}
+		}
+		return null;
+	}
+
+	private void write(final ExecutableElement method) {
+		final TypeElement declaring = (TypeElement) method.getEnclosingElement();
+		final List<String> parameterTypes = new ArrayList<>();
+		for (final VariableElement p : method.getParameters()) {
+			parameterTypes.add(getCanonicalName(p.asType()));
+		}
+		final String className = PrecompiledCallers.className(
+				processingEnv.getElementUtils().getBinaryName(declaring).toString(),
+				method.getSimpleName().toString(), parameterTypes);
+
+		try (final Writer w = processingEnv.getFiler().createSourceFile(className, method).openWriter()) {
+			w.write(getSource(className, method, parameterTypes));
+		} catch (final IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR,
+					"Unable to write " + className + ": " + e.getMessage(), method);
+		}
+	}
+
+	private String getSource(final String className, final ExecutableElement method,
+			final List<String> parameterTypes) {
+		final String owner = getCanonicalName(method.getEnclosingElement().asType());
+		final String returnType = getReferenceName(method.getReturnType());
+		final int arity = parameterTypes.size();
+		final boolean isFixed = arity <= Invokers.MAX_ARITY;
+
+		final StringBuilder call = new StringBuilder();
+		call.append(method.getModifiers().contains(Modifier.STATIC) ? owner : "obj");
+		call.append("." + method.getSimpleName() + "(");
+		final StringBuilder params = new StringBuilder("final " + owner + " obj");
+		final StringBuilder args = new StringBuilder();
+		for (int i = 0; i < arity; ++i) {
+			call.append(i > 0 ? ", " : "").append("(" + parameterTypes.get(i) + ") ");
+			call.append(isFixed ? "arg" + i : "args[" + i + "]");
+			params.append(", final java.lang.Object arg" + i);
+			args.append(", args[" + i + "]");
+		}
+		call.append(")");
+
+		String statement = method.getReturnType().getKind() == TypeKind.VOID ? call + ";\nreturn null;"
+				: "return " + call + ";";
+		if (!method.getThrownTypes().isEmpty()) {
+			statement = "try {\n" + statement + "\n} catch (final java.lang.RuntimeException | java.lang.Error e) {\n"
+					+ "throw e;\n} catch (final java.lang.Throwable e) {\n"
+					+ "throw new com.github.sdankbar.jrungen.InvokationException(e);\n}";
+		}
+
+		final int split = className.lastIndexOf('.');
+		final StringBuilder b = new StringBuilder();
+		if (split >= 0) {
+			b.append("package " + className.substring(0, split) + ";\n\n");
+		}
+		b.append("/**\n * Caller for " + owner + "#" + method.getSimpleName() + "(" + String.join(", ", parameterTypes)
+				+ "), generated by " + FastInvokeProcessor.class.getName() + ".\n */\n");
+		b.append("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })\n");
+		b.append("public final class " + className.substring(split + 1) + " implements java.util.function.BiFunction<"
+				+ owner + ", java.lang.Object[], " + returnType + ">");
+		if (isFixed) {
+			b.append(", " + Invokers.forArity(arity).getCanonicalName() + "<" + owner + ", " + returnType + ">");
+		}
+		b.append(" {\n\n");
+		if (isFixed) {
+			b.append("@Override\npublic " + returnType + " invoke(" + params + ") {\n" + statement + "\n}\n\n");
+			b.append("@Override\npublic " + returnType + " apply(final " + owner
+					+ " obj, final java.lang.Object[] args) {\nreturn invoke(obj" + args + ");\n}\n");
+		} else {
+			b.append("@Override\npublic " + returnType + " apply(final " + owner
+					+ " obj, final java.lang.Object[] args) {\n" + statement + "\n}\n");
+		}
+		b.append("}\n");
+		return b.toString();
+	}
+
+	/**
+	 * @return Canonical name of the erasure of t, matching
+	 *         {@link Class#getCanonicalName()} at runtime.
+	 */
+	private String getCanonicalName(final TypeMirror t) {
+		switch (t.getKind()) {
+		case ARRAY:
+			return getCanonicalName(((ArrayType) t).getComponentType()) + "[]";
+		case DECLARED:
+			return ((TypeElement) ((DeclaredType) t).asElement()).getQualifiedName().toString();
+		case TYPEVAR:
+		case INTERSECTION:
+			return getCanonicalName(processingEnv.getTypeUtils().erasure(t));
+		default:
+			return t.getKind().name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	private String getReferenceName(final TypeMirror t) {
+		if (t.getKind() == TypeKind.VOID) {
+			return Void.class.getName();
+		} else if (t.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass((PrimitiveType) t).getQualifiedName().toString();
+		}
+		return getCanonicalName(t);
+	}
+}
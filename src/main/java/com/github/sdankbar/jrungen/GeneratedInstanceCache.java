@@ -0,0 +1,91 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of instances of generated classes, such as the mappers and
+ * comparators built on {@link RuntimeCompiler}. The least recently used entry is
+ * evicted once the cache is full, and entries whose class was defined in a
+ * retired {@link ClassGeneration} are dropped on lookup or the next insert, so
+ * the cache does not keep retired generations loaded.
+ */
+final class GeneratedInstanceCache<K, V> {
+
+	static final int DEFAULT_MAX_SIZE = 1024;
+
+	private final Map<K, V> entries;
+
+	GeneratedInstanceCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	GeneratedInstanceCache(final int maxSize) {
+		entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return The cached instance, or null if there is none or its class has been
+	 *         retired.
+	 */
+	synchronized V get(final K key) {
+		final V value = entries.get(key);
+		if (value != null && ClassGeneration.isRetired(value.getClass())) {
+			entries.remove(key);
+			return null;
+		}
+		return value;
+	}
+
+	/**
+	 * @return The instance cached for key, which is value unless another
+	 *         instance was cached first.
+	 */
+	synchronized V putIfAbsent(final K key, final V value) {
+		final V existing = get(key);
+		if (existing != null) {
+			return existing;
+		}
+		for (final Iterator<V> i = entries.values().iterator(); i.hasNext();) {
+			if (ClassGeneration.isRetired(i.next().getClass())) {
+				i.remove();
+			}
+		}
+		entries.put(key, value);
+		return value;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+}
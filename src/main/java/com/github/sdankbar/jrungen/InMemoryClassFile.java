@@ -37,10 +37,17 @@ public class InMemoryClassFile extends SimpleJavaFileObject {
 		return URI.create("bytes:///" + className);
 	}
 
+	private final String className;
 	private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(256);
 
 	protected InMemoryClassFile(final String name) {
 		super(toURI(name), Kind.CLASS);
+		className = name;
+	}
+
+	protected InMemoryClassFile(final String name, final byte[] bytes) {
+		this(name);
+		outputStream.write(bytes, 0, bytes.length);
 	}
 
 	@Override
@@ -48,6 +55,10 @@ public class InMemoryClassFile extends SimpleJavaFileObject {
 		return outputStream;
 	}
 
+	public String getClassName() {
+		return className;
+	}
+
 	public byte[] getBytes() {
 		return outputStream.toByteArray();
 	}
@@ -22,19 +22,67 @@
  */
 package com.github.sdankbar.jrungen;
 
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Defines generated classes from bytecode held in memory. Bytecode is released
+ * as soon as its class is defined.
+ */
 public final class InMemoryClassLoader extends ClassLoader {
 
-	private final InMemoryClassFile classOutput;
+	static {
+		registerAsParallelCapable();
+	}
+
+	private final Map<String, InMemoryClassFile> pending = new ConcurrentHashMap<>();
+	private final ClassGeneration generation;
+
+	InMemoryClassLoader(final ClassGeneration generation) {
+		this.generation = generation;
+	}
+
+	/**
+	 * @param parent Loader that classes not defined by this loader are resolved
+	 *               from, such as the loader of a plugin whose classes generated
+	 *               code calls.
+	 */
+	InMemoryClassLoader(final ClassGeneration generation, final ClassLoader parent) {
+		super(parent);
+		this.generation = generation;
+	}
+
+	/**
+	 * @return The generation this loader belongs to.
+	 */
+	ClassGeneration getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return True if a class named className has been added to or defined by
+	 *         this loader.
+	 */
+	boolean contains(final String className) {
+		synchronized (getClassLoadingLock(className)) {
+			return pending.containsKey(className) || findLoadedClass(className) != null;
+		}
+	}
 
-	protected InMemoryClassLoader(final InMemoryClassFile classOutput) {
-		this.classOutput = Objects.requireNonNull(classOutput, "classOutput is null");
+	/**
+	 * Makes classOutput available to be loaded.
+	 */
+	void add(final InMemoryClassFile classOutput) {
+		pending.put(classOutput.getClassName(), classOutput);
 	}
 
 	@Override
 	public Class<?> findClass(final String name) throws ClassNotFoundException {
+		final InMemoryClassFile classOutput = pending.remove(name);
+		if (classOutput == null) {
+			throw new ClassNotFoundException(name);
+		}
 		final byte[] bytes = classOutput.getBytes();
 		return defineClass(name, bytes, 0, bytes.length);
 	}
-}
\ No newline at end of file
+}
@@ -23,25 +23,65 @@
 package com.github.sdankbar.jrungen;
 
 import java.io.IOException;
-import java.util.Objects;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
 import javax.tools.StandardJavaFileManager;
 
 public final class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
 
-	private final InMemoryClassFile byteObject;
+	private final ClassPathIndex index;
+	private final Map<String, InMemoryClassFile> classFiles = new LinkedHashMap<>();
 
-	protected InMemoryFileManager(final StandardJavaFileManager fileManager, final InMemoryClassFile byteObject) {
-		super(fileManager);
-		this.byteObject = Objects.requireNonNull(byteObject, "byteObject is null");
+	/**
+	 * Creates a file manager that writes each output class to its own class file.
+	 *
+	 * @param index Released when this file manager is closed.
+	 */
+	protected InMemoryFileManager(final ClassPathIndex index) {
+		super(index.getFileManager());
+		this.index = index;
+	}
+
+	@Override
+	public Iterable<JavaFileObject> list(final Location location, final String packageName, final Set<Kind> kinds,
+			final boolean recurse) throws IOException {
+		if (index.isIndexed(location)) {
+			return index.list(location, packageName, kinds, recurse);
+		} else {
+			return super.list(location, packageName, kinds, recurse);
+		}
 	}
 
 	@Override
 	public JavaFileObject getJavaFileForOutput(final Location location, final String className,
 			final JavaFileObject.Kind kind, final FileObject sibling) throws IOException {
-		return byteObject;
+		return classFiles.computeIfAbsent(className, InMemoryClassFile::new);
+	}
+
+	/**
+	 * Releases the index rather than closing the underlying file manager, which
+	 * is reused by later compilations.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			index.release();
+		}
+	}
+
+	/**
+	 * @return Map of class name to the class files written during compilation.
+	 */
+	public Map<String, InMemoryClassFile> getClassFiles() {
+		return Collections.unmodifiableMap(classFiles);
 	}
 }
\ No newline at end of file
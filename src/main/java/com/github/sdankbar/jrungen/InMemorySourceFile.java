@@ -32,16 +32,22 @@ public class InMemorySourceFile extends SimpleJavaFileObject {
 
 	private static URI toURI(final String className) {
 		Objects.requireNonNull(className, "className is null");
-		return URI.create("string:///" + className + Kind.SOURCE.extension);
+		return URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension);
 	}
 
+	private final String className;
 	private final String sourceCode;
 
 	protected InMemorySourceFile(final String className, final String sourceCode) {
 		super(toURI(className), Kind.SOURCE);
+		this.className = className;
 		this.sourceCode = Objects.requireNonNull(sourceCode, "sourceCode is null");
 	}
 
+	public String getClassName() {
+		return className;
+	}
+
 	@Override
 	public CharSequence getCharContent(final boolean ignoreEncodingErrors) throws IOException {
 		return sourceCode;
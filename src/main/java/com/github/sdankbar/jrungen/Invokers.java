@@ -0,0 +1,155 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.function.BiFunction;
+
+/**
+ * Fixed arity interfaces for calling methods without allocating an argument
+ * array.
+ */
+public final class Invokers {
+
+	/**
+	 * Largest number of method parameters with a fixed arity invoker.
+	 */
+	public static final int MAX_ARITY = 6;
+
+	@FunctionalInterface
+	public interface Invoker0<T, R> {
+		R invoke(T obj);
+	}
+
+	@FunctionalInterface
+	public interface Invoker1<T, R> {
+		R invoke(T obj, Object a);
+	}
+
+	@FunctionalInterface
+	public interface Invoker2<T, R> {
+		R invoke(T obj, Object a, Object b);
+	}
+
+	@FunctionalInterface
+	public interface Invoker3<T, R> {
+		R invoke(T obj, Object a, Object b, Object c);
+	}
+
+	@FunctionalInterface
+	public interface Invoker4<T, R> {
+		R invoke(T obj, Object a, Object b, Object c, Object d);
+	}
+
+	@FunctionalInterface
+	public interface Invoker5<T, R> {
+		R invoke(T obj, Object a, Object b, Object c, Object d, Object e);
+	}
+
+	@FunctionalInterface
+	public interface Invoker6<T, R> {
+		R invoke(T obj, Object a, Object b, Object c, Object d, Object e, Object f);
+	}
+
+	/**
+	 * @param arity Number of method parameters.
+	 * @return The invoker interface for methods with that many parameters.
+	 */
+	public static Class<?> forArity(final int arity) {
+		switch (arity) {
+		case 0:
+			return Invoker0.class;
+		case 1:
+			return Invoker1.class;
+		case 2:
+			return Invoker2.class;
+		case 3:
+			return Invoker3.class;
+		case 4:
+			return Invoker4.class;
+		case 5:
+			return Invoker5.class;
+		case 6:
+			return Invoker6.class;
+		default:
+			throw new IllegalArgumentException("No invoker for arity " + arity);
+		}
+	}
+
+	/**
+	 * @param invoker Instance of the invoker interface for arity.
+	 * @param arity   Number of method parameters.
+	 * @return BiFunction that unpacks an argument array and calls invoker.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T, R> BiFunction<T, Object[], R> toArrayCaller(final Object invoker, final int arity) {
+		switch (arity) {
+		case 0:
+			return (o, a) -> ((Invoker0<T, R>) invoker).invoke(o);
+		case 1:
+			return (o, a) -> ((Invoker1<T, R>) invoker).invoke(o, a[0]);
+		case 2:
+			return (o, a) -> ((Invoker2<T, R>) invoker).invoke(o, a[0], a[1]);
+		case 3:
+			return (o, a) -> ((Invoker3<T, R>) invoker).invoke(o, a[0], a[1], a[2]);
+		case 4:
+			return (o, a) -> ((Invoker4<T, R>) invoker).invoke(o, a[0], a[1], a[2], a[3]);
+		case 5:
+			return (o, a) -> ((Invoker5<T, R>) invoker).invoke(o, a[0], a[1], a[2], a[3], a[4]);
+		case 6:
+			return (o, a) -> ((Invoker6<T, R>) invoker).invoke(o, a[0], a[1], a[2], a[3], a[4], a[5]);
+		default:
+			throw new IllegalArgumentException("No invoker for arity " + arity);
+		}
+	}
+
+	/**
+	 * @param caller Caller that takes an argument array.
+	 * @param arity  Number of method parameters.
+	 * @return Invoker for arity that packs its arguments into an array and calls
+	 *         caller.
+	 */
+	static <T, R> Object fromArrayCaller(final BiFunction<T, Object[], R> caller, final int arity) {
+		switch (arity) {
+		case 0:
+			return (Invoker0<T, R>) o -> caller.apply(o, new Object[0]);
+		case 1:
+			return (Invoker1<T, R>) (o, a) -> caller.apply(o, new Object[] { a });
+		case 2:
+			return (Invoker2<T, R>) (o, a, b) -> caller.apply(o, new Object[] { a, b });
+		case 3:
+			return (Invoker3<T, R>) (o, a, b, c) -> caller.apply(o, new Object[] { a, b, c });
+		case 4:
+			return (Invoker4<T, R>) (o, a, b, c, d) -> caller.apply(o, new Object[] { a, b, c, d });
+		case 5:
+			return (Invoker5<T, R>) (o, a, b, c, d, e) -> caller.apply(o, new Object[] { a, b, c, d, e });
+		case 6:
+			return (Invoker6<T, R>) (o, a, b, c, d, e, f) -> caller.apply(o, new Object[] { a, b, c, d, e, f });
+		default:
+			return null;
+		}
+	}
+
+	private Invokers() {
+		// Static only
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * Calls a Method through a MethodHandle that has been adapted to take the
+ * target object and an array of arguments.
+ *
+ * @param <T> Type of the object the method is called on.
+ * @param <R> Return type of the method, boxed if primitive. Void methods
+ *            return null.
+ */
+final class MethodHandleCaller<T, R> implements BiFunction<T, Object[], R> {
+
+	private static final MethodType CALLER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	static <T, R> MethodHandleCaller<T, R> create(final Method m) throws CompilationException {
+		Objects.requireNonNull(m, "m is null");
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.lookup().unreflect(m);
+		} catch (final IllegalAccessException e) {
+			throw new CompilationException("Unable to access " + m, e);
+		}
+
+		handle = handle.asSpreader(Object[].class, m.getParameterCount());
+		if (Modifier.isStatic(m.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		// Boxes primitive return values and returns null for void methods.
+		return new MethodHandleCaller<>(handle.asType(CALLER_TYPE));
+	}
+
+	/**
+	 * @return Caller that ignores its target object and calls c.
+	 */
+	static <R> MethodHandleCaller<Object, R> create(final Constructor<R> c) throws CompilationException {
+		Objects.requireNonNull(c, "c is null");
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.lookup().unreflectConstructor(c);
+		} catch (final IllegalAccessException e) {
+			throw new CompilationException("Unable to access " + c, e);
+		}
+
+		handle = handle.asSpreader(Object[].class, c.getParameterCount());
+		handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		return new MethodHandleCaller<>(handle.asType(CALLER_TYPE));
+	}
+
+	private final MethodHandle handle;
+
+	private MethodHandleCaller(final MethodHandle handle) {
+		this.handle = handle;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public R apply(final T obj, final Object[] args) {
+		try {
+			return (R) (Object) handle.invokeExact((Object) obj, args);
+		} catch (final RuntimeException | Error e) {
+			throw e;
+		} catch (final Throwable e) {
+			throw new InvokationException(e);
+		}
+	}
+}
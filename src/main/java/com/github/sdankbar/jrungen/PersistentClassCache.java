@@ -0,0 +1,246 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores compiled bytecode on disk so that classes compiled by a previous run
+ * of the JVM can be defined without running javac again.
+ *
+ * Entries are stored under a sub-directory named after a fingerprint of the
+ * JDK and the classpath, so bytecode compiled against a different environment
+ * is never used. Entries are written to a temporary file and atomically moved
+ * into place, so concurrent readers, including other processes sharing the
+ * directory, only ever see complete entries. Entries that fail validation are
+ * deleted and treated as missing.
+ */
+public final class PersistentClassCache {
+
+	private static final Logger log = LoggerFactory.getLogger(PersistentClassCache.class);
+
+	private static final int MAGIC = 0x4A52470A;
+	private static final int FORMAT_VERSION = 1;
+	private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+	private static final String SUFFIX = ".bin";
+
+	/**
+	 * Fingerprints the classpath of the running JVM. Jars are identified by path,
+	 * size and modification time. Directories are identified by path and
+	 * modification time only.
+	 *
+	 * @return Fingerprint of the current classpath.
+	 */
+	public static String currentClassPathFingerprint() {
+		final String classPath = System.getProperty("java.class.path", "");
+		final StringBuilder b = new StringBuilder();
+		for (final String entry : classPath.split(File.pathSeparator)) {
+			final File f = new File(entry);
+			b.append(entry).append('|').append(f.length()).append('|').append(f.lastModified()).append('\n');
+		}
+		return ContentHash.of(b.toString());
+	}
+
+	private static String environmentFingerprint(final String classPathFingerprint) {
+		return ContentHash.of(System.getProperty("java.vendor", ""), System.getProperty("java.version", ""),
+				System.getProperty("java.vm.version", ""), classPathFingerprint).substring(0, ContentHash.NAME_LENGTH);
+	}
+
+	private final Path directory;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param root Directory to store bytecode in. Created if it does not exist.
+	 * @throws IOException Thrown if unable to create the directory.
+	 */
+	public PersistentClassCache(final Path root) throws IOException {
+		this(root, currentClassPathFingerprint());
+	}
+
+	/**
+	 * @param root                 Directory to store bytecode in. Created if it
+	 *                             does not exist.
+	 * @param classPathFingerprint Identifies the classpath generated code is
+	 *                             compiled against. Use when the default
+	 *                             fingerprint is not precise enough, such as a
+	 *                             classpath of directories.
+	 * @throws IOException Thrown if unable to create the directory.
+	 */
+	public PersistentClassCache(final Path root, final String classPathFingerprint) throws IOException {
+		Objects.requireNonNull(root, "root is null");
+		Objects.requireNonNull(classPathFingerprint, "classPathFingerprint is null");
+		directory = root.resolve(environmentFingerprint(classPathFingerprint));
+		Files.createDirectories(directory);
+	}
+
+	/**
+	 * @return Directory entries for the current environment are stored in.
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @param key Content hash of the class.
+	 * @return The stored bytecode or null if there is no valid entry.
+	 */
+	byte[] load(final String key) {
+		final Path file = directory.resolve(key + SUFFIX);
+		try {
+			final byte[] bytes = decode(key, Files.readAllBytes(file));
+			if (bytes != null) {
+				hits.incrementAndGet();
+				return bytes;
+			} else {
+				log.warn("Discarding corrupt bytecode cache entry {}", file);
+				remove(key);
+			}
+		} catch (final NoSuchFileException e) {
+			// Not cached
+		} catch (final IOException e) {
+			log.warn("Error reading bytecode cache entry " + file, e);
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * @param key      Content hash of the class.
+	 * @param bytecode Bytecode to store.
+	 */
+	void store(final String key, final byte[] bytecode) {
+		final Path target = directory.resolve(key + SUFFIX);
+		Path temp = null;
+		try {
+			temp = Files.createTempFile(directory, key, ".tmp");
+			Files.write(temp, encode(key, bytecode));
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (final IOException e) {
+			log.warn("Error writing bytecode cache entry " + target, e);
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (final IOException e2) {
+					// Ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param key Content hash of the class to remove.
+	 */
+	void remove(final String key) {
+		try {
+			Files.deleteIfExists(directory.resolve(key + SUFFIX));
+		} catch (final IOException e) {
+			log.warn("Error deleting bytecode cache entry " + key, e);
+		}
+	}
+
+	/**
+	 * Deletes all entries stored for the current environment.
+	 *
+	 * @throws IOException Thrown if unable to delete an entry.
+	 */
+	public void clear() throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (final Path p : stream) {
+				Files.deleteIfExists(p);
+			}
+		}
+	}
+
+	private byte[] encode(final String key, final byte[] bytecode) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(bytecode.length + 128);
+		try (DataOutputStream data = new DataOutputStream(out)) {
+			data.writeInt(MAGIC);
+			data.writeInt(FORMAT_VERSION);
+			data.writeUTF(key);
+			data.writeInt(bytecode.length);
+			data.write(bytecode);
+			data.write(ContentHash.newDigest().digest(bytecode));
+		}
+		return out.toByteArray();
+	}
+
+	private byte[] decode(final String key, final byte[] entry) {
+		try (DataInputStream data = new DataInputStream(new ByteArrayInputStream(entry))) {
+			if (data.readInt() != MAGIC || data.readInt() != FORMAT_VERSION || !key.equals(data.readUTF())) {
+				return null;
+			}
+			final int length = data.readInt();
+			if (length < 4 || length > data.available()) {
+				return null;
+			}
+			final byte[] bytecode = new byte[length];
+			data.readFully(bytecode);
+			final byte[] checksum = new byte[data.available()];
+			data.readFully(checksum);
+			if (!Arrays.equals(checksum, ContentHash.newDigest().digest(bytecode))) {
+				return null;
+			}
+			if (new DataInputStream(new ByteArrayInputStream(bytecode)).readInt() != CLASS_FILE_MAGIC) {
+				return null;
+			}
+			return bytecode;
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PersistentClassCache[" + directory + "]";
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Finds method callers generated at build time by {@link FastInvokeProcessor}.
+ * The processor and the runtime both derive the caller's class name from the
+ * method with {@link #className(String, String, List)}, so no index of
+ * generated classes is needed.
+ */
+final class PrecompiledCallers {
+
+	static final String SUFFIX = "_FastInvoke_";
+
+	// Per declaring class, so lookups do not keep class loaders alive.
+	private static final ClassValue<Map<String, Optional<Class<?>>>> FOUND = new ClassValue<
+			Map<String, Optional<Class<?>>>>() {
+		@Override
+		protected Map<String, Optional<Class<?>>> computeValue(final Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	/**
+	 * @param declaringClass Binary name of the class that declares the method.
+	 * @param methodName     Name of the method.
+	 * @param parameterTypes Canonical names of the erased parameter types.
+	 * @return Binary name of the caller class, in the same package as the
+	 *         declaring class so package-private methods can be called.
+	 */
+	static String className(final String declaringClass, final String methodName, final List<String> parameterTypes) {
+		// The declaring class is hashed by its binary name, as replacing '$' can make
+		// names such as Outer$Inner and Outer_Inner the same.
+		final String signature = declaringClass + "." + methodName + "(" + String.join(",", parameterTypes) + ")";
+		final String hash = ContentHash.of(signature).substring(0, ContentHash.NAME_LENGTH);
+		return declaringClass.replace('$', '_') + SUFFIX + hash;
+	}
+
+	/**
+	 * @return The caller class generated for m, or null if there is none.
+	 */
+	static Class<?> find(final Method m) {
+		final Class<?> declaring = m.getDeclaringClass();
+		final String[] parameterTypes = new String[m.getParameterCount()];
+		for (int i = 0; i < parameterTypes.length; ++i) {
+			parameterTypes[i] = m.getParameterTypes()[i].getCanonicalName();
+			if (parameterTypes[i] == null) {
+				// Local and anonymous classes cannot be named in generated source.
+				return null;
+			}
+		}
+		final String name = className(declaring.getName(), m.getName(), Arrays.asList(parameterTypes));
+		return FOUND.get(declaring).computeIfAbsent(name, n -> {
+			try {
+				return Optional.of(Class.forName(n, false, declaring.getClassLoader()));
+			} catch (final ClassNotFoundException | LinkageError e) {
+				return Optional.empty();
+			}
+		}).orElse(null);
+	}
+
+	/**
+	 * @return A new instance of the caller generated for m, or null if there is
+	 *         none.
+	 * @throws CompilationException Thrown if the caller cannot be constructed.
+	 */
+	@SuppressWarnings("unchecked")
+	static <T, R> BiFunction<T, Object[], R> newCaller(final Method m) throws CompilationException {
+		final Class<?> c = find(m);
+		return c == null ? null : (BiFunction<T, Object[], R>) RuntimeCompiler.constructInstance(c);
+	}
+
+	/**
+	 * @return A new instance of the caller generated for m if it implements
+	 *         callerInterface, otherwise null.
+	 * @throws CompilationException Thrown if the caller cannot be constructed.
+	 */
+	static <I> I newCaller(final Method m, final Class<I> callerInterface) throws CompilationException {
+		final Class<?> c = find(m);
+		return c == null || !callerInterface.isAssignableFrom(c) ? null
+				: callerInterface.cast(RuntimeCompiler.constructInstance(c));
+	}
+
+	private PrecompiledCallers() {
+		// Static only
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A readable or writable property of a class, either a public getter or setter
+ * method or a public field, and the Java source used to access it from
+ * generated code.
+ */
+final class Property {
+
+	/**
+	 * @return Properties that can be read from instances of c, by name. Getters
+	 *         are preferred over fields of the same name.
+	 */
+	static Map<String, Property> readable(final Class<?> c) {
+		final Map<String, Property> properties = new LinkedHashMap<>();
+		for (final Field f : c.getFields()) {
+			if (!Modifier.isStatic(f.getModifiers())) {
+				properties.put(f.getName(), new Property(f.getName(), f.getType(), f.getName(), false));
+			}
+		}
+		for (final Method m : c.getMethods()) {
+			// Bridge methods of covariant or generic overrides have the erased type.
+			if (Modifier.isStatic(m.getModifiers()) || m.getParameterCount() != 0 || m.isBridge() || m.isSynthetic()
+					|| m.getDeclaringClass().equals(Object.class)) {
+				continue;
+			}
+			final String name = m.getName();
+			if (name.startsWith("get") && name.length() > 3 && !m.getReturnType().equals(void.class)) {
+				properties.put(decapitalize(name.substring(3)),
+						new Property(decapitalize(name.substring(3)), m.getReturnType(), name, true));
+			} else if (name.startsWith("is") && name.length() > 2 && m.getReturnType().equals(boolean.class)) {
+				properties.put(decapitalize(name.substring(2)),
+						new Property(decapitalize(name.substring(2)), boolean.class, name, true));
+			}
+		}
+		return Collections.unmodifiableMap(properties);
+	}
+
+	/**
+	 * @return Properties that can be written to instances of c, by name. Setters
+	 *         are preferred over fields of the same name.
+	 */
+	static Map<String, Property> writable(final Class<?> c) {
+		final Map<String, Property> properties = new LinkedHashMap<>();
+		for (final Field f : c.getFields()) {
+			if (!Modifier.isStatic(f.getModifiers()) && !Modifier.isFinal(f.getModifiers())) {
+				properties.put(f.getName(), new Property(f.getName(), f.getType(), f.getName(), false));
+			}
+		}
+		for (final Method m : c.getMethods()) {
+			final String name = m.getName();
+			if (!Modifier.isStatic(m.getModifiers()) && !m.isBridge() && !m.isSynthetic() && m.getParameterCount() == 1
+					&& name.startsWith("set") && name.length() > 3) {
+				final String property = decapitalize(name.substring(3));
+				properties.put(property, new Property(property, m.getParameterTypes()[0], name, true));
+			}
+		}
+		return Collections.unmodifiableMap(properties);
+	}
+
+	/**
+	 * Follows the JavaBeans rule, so "URL" stays "URL" but "Name" becomes
+	 * "name".
+	 */
+	private static String decapitalize(final String name) {
+		if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+			return name;
+		}
+		return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+	}
+
+	private final String name;
+	private final Class<?> type;
+	private final String member;
+	private final boolean isMethod;
+
+	/**
+	 * @param member   Name of the field or of the getter or setter method.
+	 * @param isMethod True if member is a method.
+	 */
+	private Property(final String name, final Class<?> type, final String member, final boolean isMethod) {
+		this.name = name;
+		this.type = type;
+		this.member = member;
+		this.isMethod = isMethod;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * @param obj Expression for the object holding the property.
+	 * @return Expression that reads the property.
+	 */
+	String read(final String obj) {
+		return obj + "." + member + (isMethod ? "()" : "");
+	}
+
+	/**
+	 * @param obj   Expression for the object holding the property.
+	 * @param value Expression for the value to write.
+	 * @return Statement that writes the property.
+	 */
+	String write(final String obj, final String value) {
+		if (isMethod) {
+			return obj + "." + member + "(" + value + ");";
+		} else {
+			return obj + "." + member + " = " + value + ";";
+		}
+	}
+
+	/**
+	 * @return True if a value of type from can be written to a property of type
+	 *         to without a cast, allowing for boxing and unboxing.
+	 */
+	static boolean isAssignable(final Class<?> from, final Class<?> to) {
+		return to.isAssignableFrom(from)
+				|| RuntimeCompiler.toReferenceType(from).equals(RuntimeCompiler.toReferenceType(to))
+				|| (from.isPrimitive() && to.isAssignableFrom(RuntimeCompiler.toReferenceType(from)));
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.github.sdankbar.jrungen.Factories.Factory0;
+import com.github.sdankbar.jrungen.Factories.Factory1;
+import com.github.sdankbar.jrungen.Factories.Factory2;
+import com.github.sdankbar.jrungen.Factories.Factory3;
+import com.github.sdankbar.jrungen.Factories.Factory4;
+import com.github.sdankbar.jrungen.Factories.Factory5;
+import com.github.sdankbar.jrungen.Factories.Factory6;
+
+/**
+ * Calls a Constructor, starting with reflection and moving to a MethodHandle
+ * and then a compiled factory as the number of calls grows, the same way as
+ * {@link ReflectionInvokeWrapper}. Safe to share between threads.
+ *
+ * @param <T> Type constructed.
+ */
+public class ReflectionConstructorWrapper<T> extends TieredWrapper<ReflectionConstructorWrapper.Creators<T>> {
+
+	/**
+	 * The array and fixed arity factories for one tier.
+	 */
+	static final class Creators<T> {
+		private final Function<Object[], T> func;
+		private final Object factory;
+
+		private Creators(final Function<Object[], T> func, final Object factory) {
+			this.func = func;
+			this.factory = factory;
+		}
+	}
+
+	private final Constructor<T> constructor;
+	private final int arity;
+
+	public ReflectionConstructorWrapper(final Constructor<T> c) {
+		this(c, ReflectionInvokeWrapper.DEFAULT_METHOD_HANDLE_THRESHOLD,
+				ReflectionInvokeWrapper.DEFAULT_COMPILE_THRESHOLD);
+	}
+
+	/**
+	 * @param c                     Constructor to call.
+	 * @param methodHandleThreshold Number of calls before switching from
+	 *                              reflection to a MethodHandle.
+	 * @param compileThreshold      Number of calls before compiling a factory. 0
+	 *                              starts compiling immediately.
+	 */
+	public ReflectionConstructorWrapper(final Constructor<T> c, final int methodHandleThreshold,
+			final int compileThreshold) {
+		super(methodHandleThreshold, compileThreshold);
+		constructor = Objects.requireNonNull(c, "c is null");
+		arity = c.getParameterCount();
+
+		final Function<Object[], T> reflect = this::reflect;
+		start(new Creators<>(reflect, Factories.fromArrayFactory(reflect, arity)));
+	}
+
+	@Override
+	Creators<T> createMethodHandleTier() {
+		try {
+			final BiFunction<Object, Object[], T> handle = MethodHandleCaller.create(constructor);
+			final Function<Object[], T> func = args -> handle.apply(null, args);
+			return new Creators<>(func, Factories.fromArrayFactory(func, arity));
+		} catch (final CompilationException e) {
+			// Inaccessible to MethodHandles, keep using reflection.
+			return null;
+		}
+	}
+
+	@Override
+	CompletableFuture<Creators<T>> compile() {
+		if (arity <= Factories.MAX_ARITY) {
+			// The fixed arity factory also backs newInstance(Object[]), so only one
+			// class is compiled per wrapper.
+			return COMPILER.compileFactoryAsync(constructor, Factories.forArity(arity), constructor.getDeclaringClass())
+					.thenApply(factory -> new Creators<>(Factories.toArrayFactory(factory, arity), factory));
+		} else {
+			return COMPILER.compileArrayFactoryAsync(constructor).thenApply(func -> new Creators<>(func, null));
+		}
+	}
+
+	@Override
+	Object getMember() {
+		return constructor;
+	}
+
+	private void checkArity(final int count) {
+		if (arity != count) {
+			throw new InvokationException(constructor + " takes " + arity + " arguments, not " + count);
+		}
+	}
+
+	private T reflect(final Object[] args) {
+		try {
+			return constructor.newInstance(args);
+		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException
+				| InvocationTargetException e) {
+			throw new InvokationException(e);
+		}
+	}
+
+	public T newInstance(final Object[] args) {
+		return calls().func.apply(args);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T newInstance0() {
+		checkArity(0);
+		return ((Factory0<T>) calls().factory).create();
+	}
+
+	@SuppressWarnings("unchecked")
+	public T newInstance1(final Object a) {
+		checkArity(1);
+		return ((Factory1<T>) calls().factory).create(a);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T newInstance2(final Object a, final Object b) {
+		checkArity(2);
+		return ((Factory2<T>) calls().factory).create(a, b);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T newInstance3(final Object a, final Object b, final Object c) {
+		checkArity(3);
+		return ((Factory3<T>) calls().factory).create(a, b, c);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T newInstance4(final Object a, final Object b, final Object c, final Object d) {
+		checkArity(4);
+		return ((Factory4<T>) calls().factory).create(a, b, c, d);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T newInstance5(final Object a, final Object b, final Object c, final Object d, final Object e) {
+		checkArity(5);
+		return ((Factory5<T>) calls().factory).create(a, b, c, d, e);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T newInstance6(final Object a, final Object b, final Object c, final Object d, final Object e,
+			final Object f) {
+		checkArity(6);
+		return ((Factory6<T>) calls().factory).create(a, b, c, d, e, f);
+	}
+
+}
@@ -0,0 +1,267 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Reads and writes a Field, starting with reflection and moving to compiled
+ * accessors once the field has been accessed compileThreshold times. int, long
+ * and double fields can also be accessed without boxing through getInt/setInt,
+ * getLong/setLong and getDouble/setDouble. Safe to share between threads.
+ *
+ * @param <T> Type of the object holding the field.
+ * @param <V> Type of the field, boxed if primitive.
+ */
+public class ReflectionFieldWrapper<T, V> extends TieredWrapper<ReflectionFieldWrapper.Accessors<T, V>> {
+
+	/**
+	 * Default number of accesses before compiling accessors.
+	 */
+	public static final int DEFAULT_COMPILE_THRESHOLD = Integer.getInteger("jrungen.wrapper.compileThreshold", 1000);
+
+	/**
+	 * The accessors for one tier. The primitive accessors are only set for int,
+	 * long and double fields and are the matching ToXFunction and ObjXConsumer.
+	 */
+	static final class Accessors<T, V> {
+		private final Function<T, V> getter;
+		private final BiConsumer<T, V> setter;
+		private final Object primitiveGetter;
+		private final Object primitiveSetter;
+
+		private Accessors(final Function<T, V> getter, final BiConsumer<T, V> setter, final Object primitiveGetter,
+				final Object primitiveSetter) {
+			this.getter = getter;
+			this.setter = setter;
+			this.primitiveGetter = primitiveGetter;
+			this.primitiveSetter = primitiveSetter;
+		}
+	}
+
+	private final Field field;
+
+	public ReflectionFieldWrapper(final Field f) {
+		this(f, DEFAULT_COMPILE_THRESHOLD);
+	}
+
+	/**
+	 * @param f                Field to access.
+	 * @param compileThreshold Number of accesses before compiling accessors. 0
+	 *                         starts compiling immediately.
+	 */
+	public ReflectionFieldWrapper(final Field f, final int compileThreshold) {
+		// Field.get is already backed by MethodHandles on recent JVMs, so there is
+		// no MethodHandle tier.
+		super(compileThreshold);
+		field = Objects.requireNonNull(f, "f is null");
+		start(reflectiveAccessors());
+	}
+
+	@SuppressWarnings("unchecked")
+	private Accessors<T, V> reflectiveAccessors() {
+		final Function<T, V> getter = obj -> {
+			try {
+				return (V) field.get(obj);
+			} catch (final IllegalAccessException e) {
+				throw new InvokationException(e);
+			}
+		};
+		final BiConsumer<T, V> setter = (obj, value) -> {
+			try {
+				field.set(obj, value);
+			} catch (final IllegalAccessException e) {
+				throw new InvokationException(e);
+			}
+		};
+
+		final Class<?> type = field.getType();
+		if (type.equals(int.class)) {
+			return new Accessors<>(getter, setter, (ToIntFunction<T>) obj -> {
+				try {
+					return field.getInt(obj);
+				} catch (final IllegalAccessException e) {
+					throw new InvokationException(e);
+				}
+			}, (ObjIntConsumer<T>) (obj, value) -> {
+				try {
+					field.setInt(obj, value);
+				} catch (final IllegalAccessException e) {
+					throw new InvokationException(e);
+				}
+			});
+		} else if (type.equals(long.class)) {
+			return new Accessors<>(getter, setter, (ToLongFunction<T>) obj -> {
+				try {
+					return field.getLong(obj);
+				} catch (final IllegalAccessException e) {
+					throw new InvokationException(e);
+				}
+			}, (ObjLongConsumer<T>) (obj, value) -> {
+				try {
+					field.setLong(obj, value);
+				} catch (final IllegalAccessException e) {
+					throw new InvokationException(e);
+				}
+			});
+		} else if (type.equals(double.class)) {
+			return new Accessors<>(getter, setter, (ToDoubleFunction<T>) obj -> {
+				try {
+					return field.getDouble(obj);
+				} catch (final IllegalAccessException e) {
+					throw new InvokationException(e);
+				}
+			}, (ObjDoubleConsumer<T>) (obj, value) -> {
+				try {
+					field.setDouble(obj, value);
+				} catch (final IllegalAccessException e) {
+					throw new InvokationException(e);
+				}
+			});
+		} else {
+			return new Accessors<>(getter, setter, null, null);
+		}
+	}
+
+	@Override
+	Accessors<T, V> createMethodHandleTier() {
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	CompletableFuture<Accessors<T, V>> compile() {
+		final Class<?> holder = field.getDeclaringClass();
+		final Class<?> boxed = RuntimeCompiler.toReferenceType(field.getType());
+		// Final fields keep the reflective setters, which report the failed write.
+		final boolean isFinal = Modifier.isFinal(field.getModifiers());
+		final Accessors<T, V> reflective = reflectiveAccessors();
+
+		// All accessors are compiled by one javac invocation.
+		final List<Class<?>> interfaces = new ArrayList<>();
+		final List<Class<?>[]> typeArguments = new ArrayList<>();
+		interfaces.add(Function.class);
+		typeArguments.add(new Class<?>[] { holder, boxed });
+		if (!isFinal) {
+			interfaces.add(BiConsumer.class);
+			typeArguments.add(new Class<?>[] { holder, boxed });
+		}
+		final Class<?>[] primitiveInterfaces = primitiveInterfaces(field.getType());
+		if (primitiveInterfaces != null) {
+			interfaces.add(primitiveInterfaces[0]);
+			typeArguments.add(new Class<?>[] { holder });
+			if (!isFinal) {
+				interfaces.add(primitiveInterfaces[1]);
+				typeArguments.add(new Class<?>[] { holder });
+			}
+		}
+
+		return COMPILER.compileFieldAccessorsAsync(field, interfaces, typeArguments).thenApply(accessors -> {
+			final Iterator<Object> i = accessors.iterator();
+			final Function<T, V> getter = (Function<T, V>) i.next();
+			final BiConsumer<T, V> setter = isFinal ? reflective.setter : (BiConsumer<T, V>) i.next();
+			if (primitiveInterfaces == null) {
+				return new Accessors<>(getter, setter, null, null);
+			}
+			final Object primitiveGetter = i.next();
+			return new Accessors<>(getter, setter, primitiveGetter, isFinal ? reflective.primitiveSetter : i.next());
+		});
+	}
+
+	private static Class<?>[] primitiveInterfaces(final Class<?> type) {
+		if (type.equals(int.class)) {
+			return new Class<?>[] { ToIntFunction.class, ObjIntConsumer.class };
+		} else if (type.equals(long.class)) {
+			return new Class<?>[] { ToLongFunction.class, ObjLongConsumer.class };
+		} else if (type.equals(double.class)) {
+			return new Class<?>[] { ToDoubleFunction.class, ObjDoubleConsumer.class };
+		} else {
+			return null;
+		}
+	}
+
+	@Override
+	Object getMember() {
+		return field;
+	}
+
+	private Object primitive(final Object accessor, final Class<?> type) {
+		if (accessor == null || !field.getType().equals(type)) {
+			throw new InvokationException(field + " is not of type " + type);
+		}
+		return accessor;
+	}
+
+	public V get(final T obj) {
+		return calls().getter.apply(obj);
+	}
+
+	public void set(final T obj, final V value) {
+		calls().setter.accept(obj, value);
+	}
+
+	@SuppressWarnings("unchecked")
+	public int getInt(final T obj) {
+		return ((ToIntFunction<T>) primitive(calls().primitiveGetter, int.class)).applyAsInt(obj);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void setInt(final T obj, final int value) {
+		((ObjIntConsumer<T>) primitive(calls().primitiveSetter, int.class)).accept(obj, value);
+	}
+
+	@SuppressWarnings("unchecked")
+	public long getLong(final T obj) {
+		return ((ToLongFunction<T>) primitive(calls().primitiveGetter, long.class)).applyAsLong(obj);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void setLong(final T obj, final long value) {
+		((ObjLongConsumer<T>) primitive(calls().primitiveSetter, long.class)).accept(obj, value);
+	}
+
+	@SuppressWarnings("unchecked")
+	public double getDouble(final T obj) {
+		return ((ToDoubleFunction<T>) primitive(calls().primitiveGetter, double.class)).applyAsDouble(obj);
+	}
+
+	@SuppressWarnings("unchecked")
+	public void setDouble(final T obj, final double value) {
+		((ObjDoubleConsumer<T>) primitive(calls().primitiveSetter, double.class)).accept(obj, value);
+	}
+
+}
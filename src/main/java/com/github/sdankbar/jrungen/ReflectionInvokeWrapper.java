@@ -25,50 +25,192 @@ package com.github.sdankbar.jrungen;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Objects;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 
-public class ReflectionInvokeWrapper<T, R> {
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-	private static final RuntimeCompiler COMPILER = new RuntimeCompiler();
+import com.github.sdankbar.jrungen.Invokers.Invoker0;
+import com.github.sdankbar.jrungen.Invokers.Invoker1;
+import com.github.sdankbar.jrungen.Invokers.Invoker2;
+import com.github.sdankbar.jrungen.Invokers.Invoker3;
+import com.github.sdankbar.jrungen.Invokers.Invoker4;
+import com.github.sdankbar.jrungen.Invokers.Invoker5;
+import com.github.sdankbar.jrungen.Invokers.Invoker6;
+
+/**
+ * Calls a Method, starting with reflection and moving to faster tiers as the
+ * number of calls grows: a MethodHandle once the method has been called
+ * methodHandleThreshold times and a compiled caller once it has been called
+ * compileThreshold times. Compilation happens in the background, calls use the
+ * previous tier until the compiler thread publishes the compiled caller. Safe to
+ * share between threads. Methods annotated with {@link FastInvoke} start on the
+ * caller generated for them at build time.
+ *
+ * @param <T> Type of the object the method is called on.
+ * @param <R> Return type of the method, boxed if primitive.
+ */
+public class ReflectionInvokeWrapper<T, R> extends TieredWrapper<ReflectionInvokeWrapper.Callers<T, R>> {
+
+	private static final Logger log = LoggerFactory.getLogger(ReflectionInvokeWrapper.class);
+
+	/**
+	 * Default number of calls before switching from reflection to a
+	 * MethodHandle.
+	 */
+	public static final int DEFAULT_METHOD_HANDLE_THRESHOLD = Integer
+			.getInteger("jrungen.wrapper.methodHandleThreshold", 16);
+
+	/**
+	 * Default number of calls before compiling a caller.
+	 */
+	public static final int DEFAULT_COMPILE_THRESHOLD = Integer.getInteger("jrungen.wrapper.compileThreshold", 1000);
+
+	/**
+	 * The array and fixed arity callers for one tier.
+	 */
+	static final class Callers<T, R> {
+		private final BiFunction<T, Object[], R> func;
+		private final Object invoker;
+
+		private Callers(final BiFunction<T, Object[], R> func, final Object invoker) {
+			this.func = func;
+			this.invoker = invoker;
+		}
+	}
 
 	private final Method method;
-	private final Future<BiFunction<T, Object[], R>> compileFuture;
-	private BiFunction<T, Object[], R> func = null;
+	private final int arity;
 
 	public ReflectionInvokeWrapper(final Method m) {
+		this(m, DEFAULT_METHOD_HANDLE_THRESHOLD, DEFAULT_COMPILE_THRESHOLD);
+	}
+
+	/**
+	 * @param m                     Method to call.
+	 * @param methodHandleThreshold Number of calls before switching from
+	 *                              reflection to a MethodHandle.
+	 * @param compileThreshold      Number of calls before compiling a caller. 0
+	 *                              starts compiling immediately.
+	 */
+	public ReflectionInvokeWrapper(final Method m, final int methodHandleThreshold, final int compileThreshold) {
+		super(methodHandleThreshold, compileThreshold);
 		method = Objects.requireNonNull(m, "m is null");
-		compileFuture = COMPILER.compileMethodCallerAsync(m);
+		arity = m.getParameterCount();
+
+		final BiFunction<T, Object[], R> precompiled = findPrecompiled();
+		if (precompiled != null) {
+			// Callers generated for FastInvoke methods also implement the fixed
+			// arity invoker.
+			startCompiled(new Callers<>(precompiled, arity <= Invokers.MAX_ARITY ? precompiled : null));
+		} else {
+			final BiFunction<T, Object[], R> reflect = this::reflect;
+			start(new Callers<>(reflect, Invokers.fromArrayCaller(reflect, arity)));
+		}
 	}
 
-	public void forceCompilation() {
+	private BiFunction<T, Object[], R> findPrecompiled() {
 		try {
-			func = compileFuture.get();
-		} catch (InterruptedException | ExecutionException e) {
-			throw new InvokationException(e);
+			return PrecompiledCallers.newCaller(method);
+		} catch (final CompilationException e) {
+			log.warn("Unable to construct the generated caller for " + method + ", compiling at runtime", e);
+			return null;
+		}
+	}
+
+	@Override
+	Callers<T, R> createMethodHandleTier() {
+		try {
+			final BiFunction<T, Object[], R> handle = MethodHandleCaller.create(method);
+			return new Callers<>(handle, Invokers.fromArrayCaller(handle, arity));
+		} catch (final CompilationException e) {
+			// Inaccessible to MethodHandles, keep using reflection.
+			return null;
 		}
 	}
 
 	@SuppressWarnings("unchecked")
-	public R invoke(final T obj, final Object[] args) {
-		if (func != null) {
-			return func.apply(obj, args);
+	@Override
+	CompletableFuture<Callers<T, R>> compile() {
+		if (arity <= Invokers.MAX_ARITY) {
+			// The fixed arity invoker also backs invoke(T, Object[]), so only one
+			// class is compiled per wrapper.
+			return COMPILER
+					.compileMethodCallerAsync(method, Invokers.forArity(arity), method.getDeclaringClass(),
+							RuntimeCompiler.toReferenceType(method.getReturnType()))
+					.thenApply(invoker -> new Callers<>(Invokers.toArrayCaller(invoker, arity), invoker));
 		} else {
-			if (compileFuture.isDone()) {
-				try {
-					func = compileFuture.get();
-				} catch (InterruptedException | ExecutionException e) {
-					throw new InvokationException(e);
-				}
-			}
-
-			try {
-				return (R) method.invoke(obj, args);
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-				throw new InvokationException(e);
-			}
+			return COMPILER.compileMethodCallerAsync(method)
+					.thenApply(func -> new Callers<>((BiFunction<T, Object[], R>) func, null));
 		}
 	}
 
+	@Override
+	Object getMember() {
+		return method;
+	}
+
+	private void checkArity(final int count) {
+		if (arity != count) {
+			throw new InvokationException(method + " takes " + arity + " arguments, not " + count);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private R reflect(final T obj, final Object[] args) {
+		try {
+			return (R) method.invoke(obj, args);
+		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+			throw new InvokationException(e);
+		}
+	}
+
+	public R invoke(final T obj, final Object[] args) {
+		return calls().func.apply(obj, args);
+	}
+
+	@SuppressWarnings("unchecked")
+	public R invoke0(final T obj) {
+		checkArity(0);
+		return ((Invoker0<T, R>) calls().invoker).invoke(obj);
+	}
+
+	@SuppressWarnings("unchecked")
+	public R invoke1(final T obj, final Object a) {
+		checkArity(1);
+		return ((Invoker1<T, R>) calls().invoker).invoke(obj, a);
+	}
+
+	@SuppressWarnings("unchecked")
+	public R invoke2(final T obj, final Object a, final Object b) {
+		checkArity(2);
+		return ((Invoker2<T, R>) calls().invoker).invoke(obj, a, b);
+	}
+
+	@SuppressWarnings("unchecked")
+	public R invoke3(final T obj, final Object a, final Object b, final Object c) {
+		checkArity(3);
+		return ((Invoker3<T, R>) calls().invoker).invoke(obj, a, b, c);
+	}
+
+	@SuppressWarnings("unchecked")
+	public R invoke4(final T obj, final Object a, final Object b, final Object c, final Object d) {
+		checkArity(4);
+		return ((Invoker4<T, R>) calls().invoker).invoke(obj, a, b, c, d);
+	}
+
+	@SuppressWarnings("unchecked")
+	public R invoke5(final T obj, final Object a, final Object b, final Object c, final Object d, final Object e) {
+		checkArity(5);
+		return ((Invoker5<T, R>) calls().invoker).invoke(obj, a, b, c, d, e);
+	}
+
+	@SuppressWarnings("unchecked")
+	public R invoke6(final T obj, final Object a, final Object b, final Object c, final Object d, final Object e,
+			final Object f) {
+		checkArity(6);
+		return ((Invoker6<T, R>) calls().invoker).invoke(obj, a, b, c, d, e, f);
+	}
+
 }
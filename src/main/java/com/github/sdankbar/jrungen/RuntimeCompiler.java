@@ -23,17 +23,35 @@
 package com.github.sdankbar.jrungen;
 
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.tools.Diagnostic;
@@ -41,35 +59,30 @@ import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class RuntimeCompiler {
 
-	private static ExecutorService COMPILER_THREADS = Executors.newCachedThreadPool(new ThreadFactory() {
-		@Override
-		public Thread newThread(final Runnable r) {
-			final Thread t = Executors.defaultThreadFactory().newThread(r);
-			t.setDaemon(true);
-			return t;
-		}
-	});
 	private static final Logger log = LoggerFactory.getLogger(RuntimeCompiler.class);
 
-	@SuppressWarnings("unchecked")
-	private static <T> Class<T> loadClass(final String className, final InMemoryClassFile classOuput)
-			throws ClassNotFoundException {
-		final ClassLoader inMemoryClassLoader = new InMemoryClassLoader(classOuput);
-		return (Class<T>) inMemoryClassLoader.loadClass(className);
-	}
-
 	private static void compilationError(final DiagnosticCollector<JavaFileObject> collector)
 			throws CompilationException {
 		final String errorMsg = collector.getDiagnostics().stream().map(Diagnostic::toString)
 				.collect(Collectors.joining("\n"));
-		throw new CompilationException(errorMsg);
+
+		// Map each error back to the compilation unit it came from.
+		final Map<String, String> unitErrors = new LinkedHashMap<>();
+		for (final Diagnostic<? extends JavaFileObject> d : collector.getDiagnostics()) {
+			if (d.getKind() == Diagnostic.Kind.ERROR) {
+				final String unit = d.getSource() instanceof InMemorySourceFile
+						? ((InMemorySourceFile) d.getSource()).getClassName()
+						: "";
+				unitErrors.merge(unit, d.toString(), (a, b) -> a + "\n" + b);
+			}
+		}
+		throw new CompilationException(errorMsg, unitErrors);
 	}
 
 	/**
@@ -91,105 +104,672 @@ public class RuntimeCompiler {
 		}
 	}
 
+	/**
+	 * Default number of compiled classes kept in each compiler's cache.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 512;
+
+	/**
+	 * If true, the first compiler constructed starts {@link #warmUpAsync()}. Set
+	 * with the jrungen.warmUp system property.
+	 */
+	public static final boolean AUTO_WARM_UP = Boolean.getBoolean("jrungen.warmUp");
+
+	/**
+	 * A compilation run by {@link RuntimeCompiler#singleFlight}.
+	 */
+	@FunctionalInterface
+	interface CompilationTask<V> {
+		V compile() throws CompilationException;
+	}
+
 	private final JavaCompiler compilerReference = javax.tools.ToolProvider.getSystemJavaCompiler();
+	private final CompilationCache cache;
+	private final PersistentClassCache persistentCache;
+	private volatile CompilationProfile profile = CompilationProfile.STANDARD;
+	private volatile CallerBackend callerBackend = CallerBackend.JAVAC;
+	private volatile CompilerScheduler scheduler = CompilerScheduler.getDefault();
+	private final ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+	private final Object generationLock = new Object();
+	private volatile ClassGeneration generation = new ClassGeneration();
+	private volatile long maxGenerationBytes = 0;
+	private final List<CompilerListener> listeners = new CopyOnWriteArrayList<>();
+
+	public RuntimeCompiler() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @param cacheSize Maximum number of compiled classes to cache. 0 disables
+	 *                  the cache.
+	 */
+	public RuntimeCompiler(final int cacheSize) {
+		this(cacheSize, null);
+	}
+
+	/**
+	 * @param cacheSize       Maximum number of compiled classes to cache. 0
+	 *                        disables the cache.
+	 * @param persistentCache On disk store of bytecode that is checked before
+	 *                        compiling and updated after compiling. May be null.
+	 */
+	public RuntimeCompiler(final int cacheSize, final PersistentClassCache persistentCache) {
+		cache = new CompilationCache(cacheSize);
+		this.persistentCache = persistentCache;
+		if (AUTO_WARM_UP && !CompilerWarmUp.isWarm()) {
+			warmUpAsync();
+		}
+	}
+
+	/**
+	 * @return The cache of classes compiled by this compiler.
+	 */
+	public CompilationCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param listener Receives events for compilations started after it is
+	 *                 added.
+	 */
+	public void addListener(final CompilerListener listener) {
+		listeners.add(Objects.requireNonNull(listener, "listener is null"));
+	}
+
+	public void removeListener(final CompilerListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Delivers an event to every listener. A listener that throws is logged and
+	 * does not stop delivery to the others.
+	 */
+	void fire(final Consumer<CompilerListener> event) {
+		for (final CompilerListener l : listeners) {
+			try {
+				event.accept(l);
+			} catch (final RuntimeException e) {
+				log.warn("Compiler listener " + l + " failed", e);
+			}
+		}
+	}
+
+	private void firePhase(final CompilePhase phase, final long start) {
+		if (!listeners.isEmpty()) {
+			final long nanos = System.nanoTime() - start;
+			fire(l -> l.phaseCompleted(phase, nanos));
+		}
+	}
+
+	/**
+	 * @param profile javac options used for subsequent compilations.
+	 */
+	public void setProfile(final CompilationProfile profile) {
+		this.profile = Objects.requireNonNull(profile, "profile is null");
+	}
+
+	public CompilationProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return Generation new classes are currently defined in.
+	 */
+	public ClassGeneration getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Defines subsequently generated classes in a new generation. Classes in the
+	 * previous generation stay loaded and cached until it is retired.
+	 *
+	 * @return The new generation.
+	 */
+	public ClassGeneration newGeneration() {
+		synchronized (generationLock) {
+			generation = new ClassGeneration();
+			return generation;
+		}
+	}
+
+	/**
+	 * Drops this compiler's references to the classes in generation so they, and
+	 * their class loader, can be unloaded once nothing else references them.
+	 * Retiring the current generation starts a new one.
+	 */
+	public void retireGeneration(final ClassGeneration retired) {
+		Objects.requireNonNull(retired, "retired is null");
+		synchronized (generationLock) {
+			retired.retire();
+			fire(l -> l.generationRetired(retired));
+			if (generation == retired) {
+				generation = new ClassGeneration();
+			}
+		}
+		cache.removeGeneration(retired);
+	}
+
+	/**
+	 * @param maxBytes Bytecode size after which a new generation is started. 0
+	 *                 never starts one automatically.
+	 */
+	public void setMaxGenerationBytes(final long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes is negative");
+		}
+		maxGenerationBytes = maxBytes;
+	}
+
+	public long getMaxGenerationBytes() {
+		return maxGenerationBytes;
+	}
+
+	private Map<String, Class<?>> define(final Collection<InMemoryClassFile> classFiles)
+			throws ClassNotFoundException {
+		return define(classFiles, null);
+	}
+
+	/**
+	 * @param parent Loader the classes resolve other types from, or null for the
+	 *               system class loader.
+	 */
+	private Map<String, Class<?>> define(final Collection<InMemoryClassFile> classFiles, final ClassLoader parent)
+			throws ClassNotFoundException {
+		final long start = System.nanoTime();
+		synchronized (generationLock) {
+			final ClassGeneration target = generation;
+			final long bytesBefore = target.getBytecodeBytes();
+			final Map<String, Class<?>> classes;
+			try {
+				classes = target.define(classFiles, parent);
+			} finally {
+				firePhase(CompilePhase.DEFINE, start);
+			}
+			final long bytes = target.getBytecodeBytes() - bytesBefore;
+			fire(l -> l.classesDefined(target, classes.size(), bytes));
+			final long max = maxGenerationBytes;
+			if (max > 0 && generation.getBytecodeBytes() >= max) {
+				generation = new ClassGeneration();
+			}
+			return classes;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> Class<T> define(final InMemoryClassFile classFile) throws ClassNotFoundException {
+		return (Class<T>) define(Collections.singletonList(classFile)).get(classFile.getClassName());
+	}
+
+	/**
+	 * @param scheduler Runs the *Async methods and parallel shards of
+	 *                  {@link #compileAll(Map, int)}.
+	 */
+	public void setScheduler(final CompilerScheduler scheduler) {
+		this.scheduler = Objects.requireNonNull(scheduler, "scheduler is null");
+	}
+
+	public CompilerScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Compiles and runs synthetic Function, BiFunction, interface and batch
+	 * sources until compile times stabilize, so the first real compilation does
+	 * not pay for loading and JIT compiling javac. The synthetic classes are
+	 * retired afterwards. Returns immediately if the JVM is already warm.
+	 *
+	 * @throws CompilationException Thrown if the synthetic sources fail to
+	 *                              compile, such as when no compiler is available.
+	 */
+	public void warmUp() throws CompilationException {
+		if (CompilerWarmUp.isWarm()) {
+			return;
+		} else if (scheduler.isWorkerThread()) {
+			// Waiting on rounds queued behind this worker could deadlock.
+			CompilerWarmUp.run(this);
+			return;
+		}
 
+		try {
+			warmUpAsync().get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CompilationException("Interrupted waiting for warm-up", e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof CompilationException) {
+				throw (CompilationException) e.getCause();
+			}
+			throw new CompilationException("Error warming up compiler", e.getCause());
+		}
+	}
+
+	/**
+	 * Runs {@link #warmUp()} on the scheduler at
+	 * {@link CompilePriority#BACKGROUND} priority, one round per task so other
+	 * compilations are not held up. Concurrent calls share one warm-up.
+	 *
+	 * @return Future completed when the compiler is warm.
+	 */
+	public CompletableFuture<Void> warmUpAsync() {
+		return CompilerWarmUp.start(this);
+	}
+
+	/**
+	 * @return True if a warm-up has completed in this JVM. Warmth is shared by
+	 *         every compiler since they share javac.
+	 */
+	public boolean isWarm() {
+		return CompilerWarmUp.isWarm();
+	}
+
+	@SuppressWarnings("unchecked")
 	public <T> Class<T> compile(final String className, final String sourceCode) throws CompilationException {
+		final String key = cacheKey(className, sourceCode);
+		final Class<?> cached = lookup(key, className);
+		if (cached != null) {
+			return (Class<T>) cached;
+		}
+
 		final DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
 
-		final InMemoryClassFile classOuput = new InMemoryClassFile(className);
-		final StandardJavaFileManager standardFileManager = compilerReference.getStandardFileManager(collector, null,
-				null);
-		try (final JavaFileManager wrappedManager = new InMemoryFileManager(standardFileManager, classOuput)) {
-			compile(className, sourceCode, collector, wrappedManager);
+		requireCompiler();
+		try (final InMemoryFileManager wrappedManager = new InMemoryFileManager(ClassPathIndex.acquire())) {
+			compile(Arrays.asList(new InMemorySourceFile(className, sourceCode)), collector, wrappedManager);
 
-			// Load the in memory bytecode as a Class.
-			return loadClass(className, classOuput);
+			// Load the in memory bytecode as a Class. Nested, anonymous and other
+			// classes declared by the source are defined by the same loader so the
+			// main class can resolve them.
+			final Map<String, InMemoryClassFile> classFiles = wrappedManager.getClassFiles();
+			final InMemoryClassFile classOutput = classFiles.get(className);
+			if (classOutput == null) {
+				throw new CompilationException("Source does not declare class " + className);
+			}
+			final Class<T> c = (Class<T>) define(classFiles.values()).get(className);
+			cache.put(key, c);
+			// The persistent cache holds one class file per entry, so only units that
+			// compile to a single class are persisted.
+			if (persistentCache != null && classFiles.size() == 1) {
+				persistentCache.store(key, classOutput.getBytes());
+			}
+			return c;
 		} catch (final IOException | ClassNotFoundException excp) {
 			throw new CompilationException("Error loading compiled class", excp);
 		}
 	}
 
-	public <T> Future<Class<T>> compileAsync(final String className, final String sourceCode) {
-		return COMPILER_THREADS.submit(() -> {
+	/**
+	 * Compiles multiple compilation units with a single invocation of javac.
+	 * Units may reference each other.
+	 *
+	 * @param sources Map of class name to source code.
+	 * @return Map of class name to compiled class.
+	 * @throws CompilationException Thrown if any unit fails to compile.
+	 *                              {@link CompilationException#getUnitErrors()}
+	 *                              identifies the units that failed.
+	 */
+	public Map<String, Class<?>> compileAll(final Map<String, String> sources) throws CompilationException {
+		return compileAll(sources, 0);
+	}
+
+	/**
+	 * Compiles multiple compilation units, splitting them into shards of at most
+	 * shardSize units. Each shard is compiled by a single invocation of javac and
+	 * the shards are compiled in parallel. Units may only reference other units
+	 * in the same shard.
+	 *
+	 * @param sources   Map of class name to source code.
+	 * @param shardSize Maximum number of units compiled by a single javac
+	 *                  invocation. 0 or less compiles all units together.
+	 * @return Map of class name to compiled class.
+	 * @throws CompilationException Thrown if any unit fails to compile.
+	 *                              {@link CompilationException#getUnitErrors()}
+	 *                              identifies the units that failed.
+	 */
+	public Map<String, Class<?>> compileAll(final Map<String, String> sources, final int shardSize)
+			throws CompilationException {
+		final List<Map<String, String>> shards = new ArrayList<>();
+		Map<String, String> shard = new LinkedHashMap<>();
+		for (final Map.Entry<String, String> e : sources.entrySet()) {
+			if (shardSize > 0 && shard.size() >= shardSize) {
+				shards.add(shard);
+				shard = new LinkedHashMap<>();
+			}
+			shard.put(e.getKey(), e.getValue());
+		}
+		if (!shard.isEmpty()) {
+			shards.add(shard);
+		}
+
+		// Shards are reused from the cache only when every unit is cached, as the
+		// units left to compile may reference the cached ones.
+		final Map<String, Class<?>> compiled = new HashMap<>();
+		final List<Map<String, String>> toCompile = new ArrayList<>();
+		for (final Map<String, String> s : shards) {
+			final Map<String, Class<?>> cached = new HashMap<>();
+			for (final Map.Entry<String, String> e : s.entrySet()) {
+				final Class<?> c = lookup(cacheKey(e.getKey(), e.getValue()), e.getKey());
+				if (c == null) {
+					break;
+				}
+				cached.put(e.getKey(), c);
+			}
+			if (cached.size() == s.size()) {
+				compiled.putAll(cached);
+			} else {
+				toCompile.add(s);
+			}
+		}
+
+		// A worker waiting on shards queued behind it could deadlock the scheduler,
+		// so workers compile every shard themselves.
+		final int inline = scheduler.isWorkerThread() ? toCompile.size() : Math.min(1, toCompile.size());
+		final List<Future<Map<String, Class<?>>>> futures = new ArrayList<>();
+		for (final Map<String, String> s : toCompile.subList(inline, toCompile.size())) {
+			futures.add(submit(() -> compileBatch(s)));
+		}
+
+		final Map<String, String> unitErrors = new LinkedHashMap<>();
+		final StringBuilder errorMsg = new StringBuilder();
+		for (final Map<String, String> s : toCompile.subList(0, inline)) {
 			try {
-				return compile(className, sourceCode);
+				compiled.putAll(compileBatch(s));
 			} catch (final CompilationException e) {
-				log.warn("Error loading compiled class", e);
-				return null;
+				unitErrors.putAll(e.getUnitErrors());
+				errorMsg.append(errorMsg.length() > 0 ? "\n" : "").append(e.getMessage());
+			}
+		}
+		for (final Future<Map<String, Class<?>>> f : futures) {
+			try {
+				compiled.putAll(f.get());
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompilationException("Interrupted waiting for compilation", e);
+			} catch (final ExecutionException e) {
+				if (e.getCause() instanceof CompilationException) {
+					final CompilationException cause = (CompilationException) e.getCause();
+					unitErrors.putAll(cause.getUnitErrors());
+					errorMsg.append(errorMsg.length() > 0 ? "\n" : "").append(cause.getMessage());
+				} else {
+					throw new CompilationException("Error compiling batch", e.getCause());
+				}
 			}
-		});
+		}
+		if (errorMsg.length() > 0) {
+			throw new CompilationException(errorMsg.toString(), unitErrors);
+		}
+
+		// Return classes in the same order as the sources were given.
+		final Map<String, Class<?>> result = new LinkedHashMap<>();
+		for (final String className : sources.keySet()) {
+			result.put(className, compiled.get(className));
+		}
+		return result;
 	}
 
-	public <T, R> Function<T, R> compileAndConstructFunctionalInterface(final Class<T> argType,
-			final Class<R> returnType, final String body, final Class<?>... extraImports) throws CompilationException {
+	private Map<String, Class<?>> compileBatch(final Map<String, String> sources) throws CompilationException {
 		final DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+		requireCompiler();
+		try (final InMemoryFileManager wrappedManager = new InMemoryFileManager(ClassPathIndex.acquire())) {
+			final List<InMemorySourceFile> sourceUnits = new ArrayList<>();
+			for (final Map.Entry<String, String> e : sources.entrySet()) {
+				sourceUnits.add(new InMemorySourceFile(e.getKey(), e.getValue()));
+			}
+			compile(sourceUnits, collector, wrappedManager);
+			for (final String className : sources.keySet()) {
+				if (!wrappedManager.getClassFiles().containsKey(className)) {
+					throw new CompilationException("Source does not declare class " + className);
+				}
+			}
 
-		final String className = "Func" + UUID.randomUUID().toString().replace("-", "");
+			// All units share a class loader so they can reference each other. For the
+			// same reason units are not written to the persistent cache, which loads
+			// each class on its own.
+			final Map<String, Class<?>> classes = define(wrappedManager.getClassFiles().values());
+			final Map<String, Class<?>> result = new LinkedHashMap<>();
+			for (final Map.Entry<String, String> e : sources.entrySet()) {
+				final Class<?> c = classes.get(e.getKey());
+				result.put(e.getKey(), c);
+				cache.put(cacheKey(e.getKey(), e.getValue()), c);
+			}
+			return result;
+		} catch (final IOException | ClassNotFoundException excp) {
+			throw new CompilationException("Error loading compiled class", excp);
+		}
+	}
 
-		final InMemoryClassFile classOuput = new InMemoryClassFile(className);
-		final StandardJavaFileManager standardFileManager = compilerReference.getStandardFileManager(collector, null,
-				null);
+	private Class<?> lookup(final String key, final String className) {
+		Class<?> c = cache.get(key);
+		if (c == null && persistentCache != null) {
+			c = loadPersisted(key, className);
+			if (c != null) {
+				cache.put(key, c);
+			}
+		}
+		final boolean hit = c != null;
+		fire(l -> l.cacheLookup(hit));
+		return c;
+	}
 
-		final String sourceCode = getFunctionalSourceCode(className, argType, returnType, extraImports, body);
-		try (final JavaFileManager wrappedManager = new InMemoryFileManager(standardFileManager, classOuput)) {
-			compile(className, sourceCode, collector, wrappedManager);
+	private <T> Class<T> loadPersisted(final String key, final String className) {
+		final byte[] bytes = persistentCache.load(key);
+		if (bytes == null) {
+			return null;
+		}
 
-			// Load the in memory bytecode as a Class.
-			return constructInstance(loadClass(className, classOuput));
-		} catch (final ClassNotFoundException | IOException excp) {
-			throw new CompilationException("Error loading compiled class", excp);
+		try {
+			return define(new InMemoryClassFile(className, bytes));
+		} catch (final ClassNotFoundException | LinkageError e) {
+			log.warn("Discarding unloadable bytecode cache entry for " + className, e);
+			persistentCache.remove(key);
+			return null;
 		}
 	}
 
-	public <T, R> Future<Function<T, R>> compileAndConstructFunctionalInterfaceAsync(final Class<T> argType,
-			final Class<R> returnType, final String body, final Class<?>... extraImports) {
-		return COMPILER_THREADS.submit(() -> {
+	/**
+	 * Runs task on the scheduler ahead of any background work.
+	 */
+	<V> Future<V> submit(final Callable<V> task) {
+		return submit(task, CompilePriority.LATENCY_CRITICAL);
+	}
+
+	<V> Future<V> submit(final Callable<V> task, final CompilePriority priority) {
+		final long queued = System.nanoTime();
+		return scheduler.submit(() -> {
+			if (!listeners.isEmpty()) {
+				final long waited = System.nanoTime() - queued;
+				fire(l -> l.taskStarted(priority, waited));
+			}
+			return task.call();
+		}, priority);
+	}
+
+	/**
+	 * Runs task on the scheduler unless a task with the same key is already
+	 * queued or running, in which case its result is shared.
+	 *
+	 * @param key Identifies the work task does, such as a hash of its inputs.
+	 * @return Future completed with the result of task, or exceptionally with the
+	 *         CompilationException it threw.
+	 */
+	@SuppressWarnings("unchecked")
+	<V> CompletableFuture<V> singleFlight(final String key, final CompilePriority priority,
+			final CompilationTask<V> task) {
+		final CompletableFuture<V> created = new CompletableFuture<>();
+		final CompletableFuture<V> existing = (CompletableFuture<V>) inFlight.putIfAbsent(key, created);
+		if (existing == null) {
 			try {
-				return compileAndConstructFunctionalInterface(argType, returnType, body, extraImports);
-			} catch (final CompilationException e) {
-				log.warn("Error loading compiled class", e);
-				return null;
+				submit(() -> {
+					try {
+						created.complete(task.compile());
+					} catch (final Throwable e) {
+						created.completeExceptionally(e);
+					} finally {
+						inFlight.remove(key, created);
+					}
+					return null;
+				}, priority);
+			} catch (final RejectedExecutionException e) {
+				inFlight.remove(key, created);
+				created.completeExceptionally(e);
 			}
-		});
+		}
+		// Hand out a dependent stage so one caller completing or cancelling its
+		// future does not affect the others.
+		return (existing == null ? created : existing).thenApply(Function.identity());
+	}
+
+	public <T> CompletableFuture<Class<T>> compileAsync(final String className, final String sourceCode) {
+		return compileAsync(className, sourceCode, CompilePriority.LATENCY_CRITICAL);
+	}
+
+	/**
+	 * @param priority Order relative to other queued compilations.
+	 */
+	public <T> CompletableFuture<Class<T>> compileAsync(final String className, final String sourceCode,
+			final CompilePriority priority) {
+		return singleFlight(ContentHash.of("class", cacheKey(className, sourceCode)), priority,
+				() -> compile(className, sourceCode));
+	}
+
+	public <T, R> Function<T, R> compileAndConstructFunctionalInterface(final Class<T> argType,
+			final Class<R> returnType, final String body, final Class<?>... extraImports) throws CompilationException {
+		// Identical bodies map to the same class name, and so to the same cache entry.
+		final long start = System.nanoTime();
+		final String className = contentAddressedName("Func",
+				getFunctionalSourceCode("Func", argType, returnType, extraImports, body));
+		final String sourceCode = getFunctionalSourceCode(className, argType, returnType, extraImports, body);
+		firePhase(CompilePhase.GENERATE, start);
+		return constructInstance(compile(className, sourceCode));
+	}
+
+	public <T, R> CompletableFuture<Function<T, R>> compileAndConstructFunctionalInterfaceAsync(
+			final Class<T> argType, final Class<R> returnType, final String body, final Class<?>... extraImports) {
+		final String key = ContentHash.of("function", argType.toString(), returnType.toString(), body,
+				Arrays.toString(extraImports));
+		return singleFlight(key, CompilePriority.LATENCY_CRITICAL,
+				() -> compileAndConstructFunctionalInterface(argType, returnType, body, extraImports));
 	}
 
 	public <T, U, R> BiFunction<T, U, R> compileAndConstructBiFunctionalInterface(final Class<T> arg1Type,
 			final Class<U> arg2Type, final Class<R> returnType, final String body, final Class<?>... extraImports)
 			throws CompilationException {
-		final DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+		final long start = System.nanoTime();
+		final String className = contentAddressedName("BiFunc",
+				getBiFunctionalSourceCode("BiFunc", arg1Type, arg2Type, returnType, extraImports, body));
+		final String sourceCode = getBiFunctionalSourceCode(className, arg1Type, arg2Type, returnType, extraImports,
+				body);
+		firePhase(CompilePhase.GENERATE, start);
+		return constructInstance(compile(className, sourceCode));
+	}
 
-		final String className = "BiFunc" + UUID.randomUUID().toString().replace("-", "");
+	public <T, U, R> CompletableFuture<BiFunction<T, U, R>> compileAndConstructBiFunctionalInterfaceAsync(
+			final Class<T> arg1Type, final Class<U> arg2Type, final Class<R> returnType, final String body,
+			final Class<?>... extraImports) {
+		final String key = ContentHash.of("bifunction", arg1Type.toString(), arg2Type.toString(),
+				returnType.toString(), body, Arrays.toString(extraImports));
+		return singleFlight(key, CompilePriority.LATENCY_CRITICAL,
+				() -> compileAndConstructBiFunctionalInterface(arg1Type, arg2Type, returnType, body, extraImports));
+	}
 
-		final InMemoryClassFile classOuput = new InMemoryClassFile(className);
-		final StandardJavaFileManager standardFileManager = compilerReference.getStandardFileManager(collector, null,
-				null);
+	/**
+	 * Compiles and constructs an implementation of an interface with a single
+	 * abstract method, such as ToIntFunction or a user defined interface. The
+	 * method's parameters are named "arg" if it has one parameter, otherwise
+	 * "arg1", "arg2" and so on.
+	 *
+	 * @param <I>           Type of the interface.
+	 * @param samInterface  Interface to implement.
+	 * @param typeArguments Types for each of the interface's type parameters, in
+	 *                      declaration order. Empty to implement the raw
+	 *                      interface.
+	 * @param body          Body of the method.
+	 * @param extraImports  Additional classes referenced by the body.
+	 * @return Instance of the compiled class.
+	 * @throws CompilationException Thrown if samInterface is not a functional
+	 *                              interface or the body fails to compile.
+	 */
+	public <I> I compileAndConstructInterface(final Class<I> samInterface, final Class<?>[] typeArguments,
+			final String body, final Class<?>... extraImports) throws CompilationException {
+		final long start = System.nanoTime();
+		final Map.Entry<String, String> unit = getInterfaceUnit(samInterface, typeArguments, body, extraImports);
+		firePhase(CompilePhase.GENERATE, start);
+		return constructInstance(compile(unit.getKey(), unit.getValue()));
+	}
 
-		final String sourceCode = getBiFunctionalSourceCode(className, arg1Type, arg2Type, returnType, extraImports,
-				body);
-		try (final JavaFileManager wrappedManager = new InMemoryFileManager(standardFileManager, classOuput)) {
-			compile(className, sourceCode, collector, wrappedManager);
+	/**
+	 * @return Class name and source code of an implementation of samInterface.
+	 */
+	private Map.Entry<String, String> getInterfaceUnit(final Class<?> samInterface, final Class<?>[] typeArguments,
+			final String body, final Class<?>... extraImports) throws CompilationException {
+		final SingleAbstractMethod sam = SingleAbstractMethod.of(samInterface, typeArguments);
+		final String prefix = samInterface.getSimpleName().isEmpty() ? "Sam" : samInterface.getSimpleName();
+		final String className = contentAddressedName(prefix,
+				getInterfaceSourceCode(prefix, samInterface, sam, extraImports, body));
+		return new AbstractMap.SimpleImmutableEntry<>(className,
+				getInterfaceSourceCode(className, samInterface, sam, extraImports, body));
+	}
 
-			// Load the in memory bytecode as a Class.
-			return constructInstance(loadClass(className, classOuput));
-		} catch (final ClassNotFoundException | IOException excp) {
-			throw new CompilationException("Error loading compiled class", excp);
-		}
+	/**
+	 * Compiles and constructs an implementation of a non-generic interface with a
+	 * single abstract method, such as IntBinaryOperator.
+	 *
+	 * @see #compileAndConstructInterface(Class, Class[], String, Class...)
+	 */
+	public <I> I compileAndConstructInterface(final Class<I> samInterface, final String body,
+			final Class<?>... extraImports) throws CompilationException {
+		return compileAndConstructInterface(samInterface, new Class<?>[0], body, extraImports);
 	}
 
-	public <T, U, R> Future<BiFunction<T, U, R>> compileAndConstructBiFunctionalInterfaceAsync(final Class<T> arg1Type,
-			final Class<U> arg2Type, final Class<R> returnType, final String body, final Class<?>... extraImports) {
-		return COMPILER_THREADS.submit(() -> {
-			try {
-				return compileAndConstructBiFunctionalInterface(arg1Type, arg2Type, returnType, body, extraImports);
-			} catch (final CompilationException e) {
-				log.warn("Error loading compiled class", e);
-				return null;
-			}
-		});
+	public <I> CompletableFuture<I> compileAndConstructInterfaceAsync(final Class<I> samInterface,
+			final Class<?>[] typeArguments, final String body, final Class<?>... extraImports) {
+		final String key = ContentHash.of("interface", samInterface.toString(), Arrays.toString(typeArguments), body,
+				Arrays.toString(extraImports));
+		return singleFlight(key, CompilePriority.LATENCY_CRITICAL,
+				() -> compileAndConstructInterface(samInterface, typeArguments, body, extraImports));
+	}
+
+	/**
+	 * @param backend Backend used by {@link #compileMethodCaller(Method)}.
+	 */
+	public void setCallerBackend(final CallerBackend backend) {
+		callerBackend = Objects.requireNonNull(backend, "backend is null");
+	}
+
+	public CallerBackend getCallerBackend() {
+		return callerBackend;
 	}
 
-	@SuppressWarnings("unchecked")
 	public <T, R> BiFunction<T, Object[], R> compileMethodCaller(final Method m) throws CompilationException {
+		return compileMethodCaller(m, callerBackend);
+	}
+
+	/**
+	 * Creates a BiFunction that calls a method. The first argument is the object
+	 * to call the method on, ignored for static methods, and the second is the
+	 * method's arguments.
+	 *
+	 * A caller generated at build time for a {@link FastInvoke} method is used
+	 * whatever the backend.
+	 *
+	 * @param m       Method to call.
+	 * @param backend How to generate the caller. Falls back to
+	 *                {@link CallerBackend#METHOD_HANDLE} if javac is not
+	 *                available.
+	 * @return BiFunction that calls the method.
+	 * @throws CompilationException Thrown if unable to create the caller.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T, R> BiFunction<T, Object[], R> compileMethodCaller(final Method m, final CallerBackend backend)
+			throws CompilationException {
+		final BiFunction<T, Object[], R> precompiled = PrecompiledCallers.newCaller(m);
+		if (precompiled != null) {
+			return precompiled;
+		} else if (backend == CallerBackend.BYTECODE) {
+			return constructInstance(defineMethodCaller(m));
+		} else if (backend == CallerBackend.METHOD_HANDLE || compilerReference == null) {
+			return MethodHandleCaller.create(m);
+		}
+
 		final StringBuilder body = new StringBuilder();
 		final boolean hasReturn = !m.getReturnType().equals(void.class);
 		if (hasReturn) {
@@ -215,18 +795,370 @@ public class RuntimeCompiler {
 				(Class<R>) toReferenceType(m.getReturnType()), body.toString(), extraImports);
 	}
 
-	public <T, R> Future<BiFunction<T, Object[], R>> compileMethodCallerAsync(final Method m) {
-		return COMPILER_THREADS.submit(() -> {
+	/**
+	 * Creates a caller for a method that implements a functional interface, such
+	 * as one of the {@link Invokers} or a user defined interface with primitive
+	 * parameters, so calls need not allocate an argument array or box arguments.
+	 *
+	 * The interface's method must either take the object to call the method on
+	 * followed by the method's arguments or, for static methods, just the
+	 * method's arguments. Each argument is cast to the method's parameter type.
+	 *
+	 * @param <I>             Type of the interface.
+	 * @param m               Method to call.
+	 * @param callerInterface Functional interface to implement.
+	 * @param typeArguments   Types for each of the interface's type parameters.
+	 * @return Instance of callerInterface that calls m.
+	 * @throws CompilationException Thrown if the interface does not match the
+	 *                              method or the caller fails to compile.
+	 */
+	public <I> I compileMethodCaller(final Method m, final Class<I> callerInterface, final Class<?>... typeArguments)
+			throws CompilationException {
+		final int arity = m.getParameterCount();
+		if (arity <= Invokers.MAX_ARITY && callerInterface.equals(Invokers.forArity(arity))) {
+			// Callers generated for FastInvoke methods implement the fixed arity
+			// invokers.
+			final I precompiled = PrecompiledCallers.newCaller(m, callerInterface);
+			if (precompiled != null) {
+				return precompiled;
+			}
+		}
+
+		final SingleAbstractMethod sam = SingleAbstractMethod.of(callerInterface, typeArguments);
+		final boolean isStatic = Modifier.isStatic(m.getModifiers());
+		final int samCount = sam.getMethod().getParameterCount();
+		final int offset = samCount - m.getParameterCount();
+		if (offset != 1 && !(offset == 0 && isStatic)) {
+			throw new CompilationException(callerInterface.getName() + " does not match the parameters of " + m);
+		}
+		final Class<?> samReturn = sam.getReturnType();
+		final boolean hasReturn = !m.getReturnType().equals(void.class);
+		if (!hasReturn && samReturn.isPrimitive() && !samReturn.equals(void.class)) {
+			throw new CompilationException(callerInterface.getName() + " must return a value but " + m
+					+ " returns void");
+		}
+
+		// Results are discarded if the interface returns void or Void.
+		final boolean returnsNull = samReturn.equals(Void.class) || (!hasReturn && !samReturn.equals(void.class));
+		final StringBuilder body = new StringBuilder();
+		if (hasReturn && !samReturn.equals(void.class) && !returnsNull) {
+			body.append("return ");
+		}
+		if (isStatic) {
+			body.append(m.getDeclaringClass().getSimpleName());
+		} else {
+			body.append("((" + m.getDeclaringClass().getSimpleName() + ") " + SingleAbstractMethod.parameterName(0,
+					samCount) + ")");
+		}
+		body.append("." + m.getName() + "(");
+		final Class<?>[] extraImports = new Class<?>[m.getParameterCount() + 1];
+		extraImports[0] = m.getDeclaringClass();
+		int i = 0;
+		for (final Class<?> argType : m.getParameterTypes()) {
+			extraImports[i + 1] = argType;
+			if (i > 0) {
+				body.append(", ");
+			}
+			body.append("(" + argType.getSimpleName() + ") " + SingleAbstractMethod.parameterName(i + offset,
+					samCount));
+			++i;
+		}
+		body.append(");");
+		if (returnsNull) {
+			body.append("return null;");
+		}
+
+		return compileAndConstructInterface(callerInterface, typeArguments, body.toString(), extraImports);
+	}
+
+	public <I> CompletableFuture<I> compileMethodCallerAsync(final Method m, final Class<I> callerInterface,
+			final Class<?>... typeArguments) {
+		final String key = ContentHash.of("typedCaller", m.toString(), callerInterface.toString(),
+				Arrays.toString(typeArguments));
+		return singleFlight(key, CompilePriority.LATENCY_CRITICAL,
+				() -> compileMethodCaller(m, callerInterface, typeArguments));
+	}
+
+	/**
+	 * Creates a getter or setter for a field that implements a functional
+	 * interface, such as ToIntFunction or ObjIntConsumer, so the field can be
+	 * accessed without reflection or boxing.
+	 *
+	 * An interface whose method returns void is implemented as a setter, taking
+	 * the object that holds the field followed by the value to set. Any other
+	 * interface is implemented as a getter taking the object that holds the
+	 * field. For static fields the object parameter may be left out.
+	 *
+	 * @param <I>               Type of the interface.
+	 * @param f                 Field to access.
+	 * @param accessorInterface Functional interface to implement.
+	 * @param typeArguments     Types for each of the interface's type
+	 *                          parameters.
+	 * @return Instance of accessorInterface that reads or writes f.
+	 * @throws CompilationException Thrown if the interface does not match the
+	 *                              field, the field is final and a setter was
+	 *                              requested, or the accessor fails to compile.
+	 */
+	public <I> I compileFieldAccessor(final Field f, final Class<I> accessorInterface,
+			final Class<?>... typeArguments) throws CompilationException {
+		return compileAndConstructInterface(accessorInterface, typeArguments,
+				getFieldAccessorBody(f, accessorInterface, typeArguments), f.getDeclaringClass(), f.getType());
+	}
+
+	/**
+	 * Creates several accessors for a field with a single javac invocation, each
+	 * as {@link #compileFieldAccessor(Field, Class, Class...)} would.
+	 *
+	 * @param f                  Field to access.
+	 * @param accessorInterfaces Functional interfaces to implement.
+	 * @param typeArguments      Type arguments for each interface, in the same
+	 *                           order.
+	 * @return Accessor for each interface, in the same order.
+	 * @throws CompilationException Thrown if an interface does not match the
+	 *                              field or the accessors fail to compile.
+	 */
+	List<Object> compileFieldAccessors(final Field f, final List<Class<?>> accessorInterfaces,
+			final List<Class<?>[]> typeArguments) throws CompilationException {
+		final long start = System.nanoTime();
+		final Map<String, String> sources = new LinkedHashMap<>();
+		final List<String> classNames = new ArrayList<>();
+		for (int i = 0; i < accessorInterfaces.size(); ++i) {
+			final Map.Entry<String, String> unit = getInterfaceUnit(accessorInterfaces.get(i), typeArguments.get(i),
+					getFieldAccessorBody(f, accessorInterfaces.get(i), typeArguments.get(i)), f.getDeclaringClass(),
+					f.getType());
+			sources.put(unit.getKey(), unit.getValue());
+			classNames.add(unit.getKey());
+		}
+		firePhase(CompilePhase.GENERATE, start);
+
+		final Map<String, Class<?>> classes = compileAll(sources);
+		final List<Object> accessors = new ArrayList<>();
+		for (final String className : classNames) {
+			accessors.add(constructInstance(classes.get(className)));
+		}
+		return accessors;
+	}
+
+	CompletableFuture<List<Object>> compileFieldAccessorsAsync(final Field f, final List<Class<?>> accessorInterfaces,
+			final List<Class<?>[]> typeArguments) {
+		final StringBuilder types = new StringBuilder();
+		for (final Class<?>[] t : typeArguments) {
+			types.append(Arrays.toString(t));
+		}
+		final String key = ContentHash.of("fieldAccessors", f.toString(), accessorInterfaces.toString(),
+				types.toString());
+		return singleFlight(key, CompilePriority.LATENCY_CRITICAL,
+				() -> compileFieldAccessors(f, accessorInterfaces, typeArguments));
+	}
+
+	private static String getFieldAccessorBody(final Field f, final Class<?> accessorInterface,
+			final Class<?>[] typeArguments) throws CompilationException {
+		final SingleAbstractMethod sam = SingleAbstractMethod.of(accessorInterface, typeArguments);
+		final boolean isStatic = Modifier.isStatic(f.getModifiers());
+		final boolean isSetter = sam.getReturnType().equals(void.class);
+		final int samCount = sam.getMethod().getParameterCount();
+		final int offset = samCount - (isSetter ? 1 : 0);
+		if (offset != 1 && !(offset == 0 && isStatic)) {
+			throw new CompilationException(accessorInterface.getName() + " does not match " + f);
+		}
+		if (isSetter && Modifier.isFinal(f.getModifiers())) {
+			throw new CompilationException("Cannot create a setter for final field " + f);
+		}
+
+		final StringBuilder body = new StringBuilder();
+		if (isStatic) {
+			body.append(f.getDeclaringClass().getSimpleName());
+		} else {
+			body.append("((" + f.getDeclaringClass().getSimpleName() + ") "
+					+ SingleAbstractMethod.parameterName(0, samCount) + ")");
+		}
+		body.append("." + f.getName());
+		if (isSetter) {
+			body.append(" = (" + f.getType().getSimpleName() + ") " + SingleAbstractMethod.parameterName(offset,
+					samCount) + ";");
+		} else {
+			body.insert(0, "return ");
+			body.append(";");
+		}
+		return body.toString();
+	}
+
+	public <I> CompletableFuture<I> compileFieldAccessorAsync(final Field f, final Class<I> accessorInterface,
+			final Class<?>... typeArguments) {
+		final String key = ContentHash.of("fieldAccessor", f.toString(), accessorInterface.toString(),
+				Arrays.toString(typeArguments));
+		return singleFlight(key, CompilePriority.LATENCY_CRITICAL,
+				() -> compileFieldAccessor(f, accessorInterface, typeArguments));
+	}
+
+	/**
+	 * Creates a factory for a constructor that implements a functional interface,
+	 * such as Supplier, one of the {@link Factories} or a user defined interface
+	 * with primitive parameters. The interface's method must take the
+	 * constructor's arguments, each of which is cast to the constructor's
+	 * parameter type.
+	 *
+	 * @param <I>              Type of the interface.
+	 * @param c                Constructor to call.
+	 * @param factoryInterface Functional interface to implement.
+	 * @param typeArguments    Types for each of the interface's type parameters.
+	 * @return Instance of factoryInterface that calls c.
+	 * @throws CompilationException Thrown if the interface does not match the
+	 *                              constructor or the factory fails to compile.
+	 */
+	public <I> I compileFactory(final Constructor<?> c, final Class<I> factoryInterface,
+			final Class<?>... typeArguments) throws CompilationException {
+		final SingleAbstractMethod sam = SingleAbstractMethod.of(factoryInterface, typeArguments);
+		final int samCount = sam.getMethod().getParameterCount();
+		if (samCount != c.getParameterCount() || sam.getReturnType().isPrimitive()) {
+			throw new CompilationException(factoryInterface.getName() + " does not match " + c);
+		}
+
+		final List<String> args = new ArrayList<>();
+		for (int i = 0; i < samCount; ++i) {
+			args.add(SingleAbstractMethod.parameterName(i, samCount));
+		}
+		return compileAndConstructInterface(factoryInterface, typeArguments, getConstructorCall(c, args),
+				getConstructorImports(c));
+	}
+
+	/**
+	 * @return Supplier that calls c, which must not take any parameters.
+	 * @throws CompilationException Thrown if c takes parameters or the factory
+	 *                              fails to compile.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Supplier<T> compileSupplier(final Constructor<T> c) throws CompilationException {
+		return compileFactory(c, Supplier.class, c.getDeclaringClass());
+	}
+
+	/**
+	 * @return Function that calls c with the arguments in its array.
+	 * @throws CompilationException Thrown if the factory fails to compile.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Function<Object[], T> compileArrayFactory(final Constructor<T> c) throws CompilationException {
+		final List<String> args = new ArrayList<>();
+		for (int i = 0; i < c.getParameterCount(); ++i) {
+			args.add("arg[" + i + "]");
+		}
+		return compileAndConstructInterface(Function.class, new Class<?>[] { Object[].class, c.getDeclaringClass() },
+				getConstructorCall(c, args), getConstructorImports(c));
+	}
+
+	public <I> CompletableFuture<I> compileFactoryAsync(final Constructor<?> c, final Class<I> factoryInterface,
+			final Class<?>... typeArguments) {
+		final String key = ContentHash.of("factory", c.toString(), factoryInterface.toString(),
+				Arrays.toString(typeArguments));
+		return singleFlight(key, CompilePriority.LATENCY_CRITICAL,
+				() -> compileFactory(c, factoryInterface, typeArguments));
+	}
+
+	public <T> CompletableFuture<Function<Object[], T>> compileArrayFactoryAsync(final Constructor<T> c) {
+		return singleFlight(ContentHash.of("arrayFactory", c.toString()), CompilePriority.LATENCY_CRITICAL,
+				() -> compileArrayFactory(c));
+	}
+
+	private static String getConstructorCall(final Constructor<?> c, final List<String> args) {
+		final StringBuilder body = new StringBuilder("return new " + c.getDeclaringClass().getSimpleName() + "(");
+		int i = 0;
+		for (final Class<?> argType : c.getParameterTypes()) {
+			if (i > 0) {
+				body.append(", ");
+			}
+			body.append("(" + argType.getSimpleName() + ") " + args.get(i));
+			++i;
+		}
+		return body.append(");").toString();
+	}
+
+	private static Class<?>[] getConstructorImports(final Constructor<?> c) {
+		final Class<?>[] imports = new Class<?>[c.getParameterCount() + 1];
+		imports[0] = c.getDeclaringClass();
+		System.arraycopy(c.getParameterTypes(), 0, imports, 1, c.getParameterCount());
+		return imports;
+	}
+
+	/**
+	 * Callers are defined by the generation's shared loader when it can see all
+	 * of the types m uses, and otherwise under the loader of m's declaring class,
+	 * so methods of classes from child or plugin loaders can be called.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> Class<T> defineMethodCaller(final Method m) throws CompilationException {
+		final ClassLoader parent = getCallerParent(m);
+		final String className = contentAddressedName("Caller", m.toString());
+		final String key = ContentHash.of(className, CallerBackend.BYTECODE.name(), loaderId(parent));
+		final Class<?> cached = cache.get(key);
+		// The loader id is only an identity hash, so check it is the same loader.
+		final boolean hit = cached != null && (parent == null || cached.getClassLoader().getParent() == parent);
+		fire(l -> l.cacheLookup(hit));
+		if (hit) {
+			return (Class<T>) cached;
+		}
+
+		try {
+			final long start = System.nanoTime();
+			final byte[] bytecode = BytecodeGenerator.methodCaller(className, m);
+			firePhase(CompilePhase.GENERATE, start);
+			final InMemoryClassFile classFile = new InMemoryClassFile(className, bytecode);
+			final Class<T> c = (Class<T>) define(Collections.singletonList(classFile), parent).get(className);
+			cache.put(key, c);
+			return c;
+		} catch (final ClassNotFoundException | LinkageError e) {
+			throw new CompilationException("Error loading generated class", e);
+		}
+	}
+
+	public <T, R> CompletableFuture<BiFunction<T, Object[], R>> compileMethodCallerAsync(final Method m) {
+		final CallerBackend backend = callerBackend;
+		return singleFlight(
+				ContentHash.of("caller", m.toString(), backend.name(),
+						loaderId(m.getDeclaringClass().getClassLoader())),
+				CompilePriority.LATENCY_CRITICAL, () -> compileMethodCaller(m, backend));
+	}
+
+	/**
+	 * @return Null if the system class loader can see every type m uses,
+	 *         otherwise the loader of m's declaring class.
+	 * @throws CompilationException Thrown if neither loader can see every type m
+	 *                              uses.
+	 */
+	private static ClassLoader getCallerParent(final Method m) throws CompilationException {
+		if (canSee(ClassLoader.getSystemClassLoader(), m)) {
+			return null;
+		}
+		final ClassLoader declaring = m.getDeclaringClass().getClassLoader();
+		if (!canSee(declaring, m)) {
+			throw new CompilationException("Method uses types not visible from its declaring class: " + m);
+		}
+		return declaring;
+	}
+
+	private static boolean canSee(final ClassLoader loader, final Method m) {
+		final List<Class<?>> types = new ArrayList<>(Arrays.asList(m.getParameterTypes()));
+		types.add(m.getReturnType());
+		types.add(m.getDeclaringClass());
+		for (Class<?> t : types) {
+			while (t.isArray()) {
+				t = t.getComponentType();
+			}
 			try {
-				return compileMethodCaller(m);
-			} catch (final CompilationException e) {
-				log.warn("Error loading compiled class", e);
-				return null;
+				if (!t.isPrimitive() && Class.forName(t.getName(), false, loader) != t) {
+					return false;
+				}
+			} catch (final ClassNotFoundException e) {
+				return false;
 			}
-		});
+		}
+		return true;
+	}
+
+	private static String loaderId(final ClassLoader loader) {
+		return loader == null ? "" : loader.getClass().getName() + "@" + System.identityHashCode(loader);
 	}
 
-	private Class<?> toReferenceType(final Class<?> c) {
+	static Class<?> toReferenceType(final Class<?> c) {
 		if (c.isPrimitive()) {
 			if (c.equals(boolean.class)) {
 				return Boolean.class;
@@ -253,34 +1185,100 @@ public class RuntimeCompiler {
 		}
 	}
 
+	/**
+	 * @return Key of the class compiled from sourceCode with the current
+	 *         profile, which changes the bytecode javac generates.
+	 */
+	private String cacheKey(final String className, final String sourceCode) {
+		return ContentHash.of(className, sourceCode, profile.name());
+	}
+
+	static String contentAddressedName(final String prefix, final String sourceCode) {
+		return prefix + ContentHash.of(sourceCode).substring(0, ContentHash.NAME_LENGTH);
+	}
+
 	private String getImportName(final Class<?> c) {
-		final String name;
-		if (c.getComponentType() != null) {
-			name = c.getComponentType().getName();
-		} else {
-			name = c.getName();
+		Class<?> component = c;
+		while (component.getComponentType() != null) {
+			component = component.getComponentType();
 		}
 		// Handle inner class definitions
-		return name.replace("$", ".");
+		return component.getName().replace("$", ".");
 	}
 
-	private String getFunctionalSourceCode(final String className, final Class<?> argType, final Class<?> returnType,
-			final Class<?>[] extraImports, final String body) {
-		final String argT = argType.getSimpleName();
-		final String retT = returnType.getSimpleName();
-		final StringBuilder builder = new StringBuilder();
-		builder.append("import java.util.function.Function;\n");
-		if (isImportable(argType)) {
-			builder.append("import " + getImportName(argType) + ";\n");
+	private boolean isImportable(final Class<?> c) {
+		if (c.getComponentType() != null) {
+			return isImportable(c.getComponentType());
+		} else if (c.isPrimitive()) {
+			return false;
+		} else if (c.equals(Boolean.class) || c.equals(Byte.class) || c.equals(Character.class) || c.equals(Short.class)
+				|| c.equals(Integer.class) || c.equals(Long.class) || c.equals(Float.class) || c.equals(Double.class)
+				|| c.equals(Void.class)) {
+			return false;
+		} else {
+			return true;
 		}
-		if (isImportable(returnType)) {
-			builder.append("import " + getImportName(returnType) + ";\n");
+	}
+
+	/**
+	 * Builds the import block for generated source. Imports are sorted and
+	 * de-duplicated so the same set of types always produces the same source,
+	 * regardless of the order they were given in.
+	 */
+	private String getImports(final String functionalInterface, final Class<?>[] types,
+			final Class<?>[] extraImports) {
+		final Set<String> imports = new TreeSet<>();
+		imports.add(functionalInterface);
+		for (final Class<?> c : types) {
+			if (isImportable(c)) {
+				imports.add(getImportName(c));
+			}
 		}
 		for (final Class<?> c : extraImports) {
-			if (isImportable(returnType)) {
-				builder.append("import " + getImportName(c) + ";\n");
+			if (isImportable(c)) {
+				imports.add(getImportName(c));
+			}
+		}
+
+		// Types that share a simple name, such as two classes called Dto, cannot
+		// both be imported. Neither is, so they must be referred to by canonical
+		// name.
+		final Map<String, Integer> simpleNames = new HashMap<>();
+		for (final String i : imports) {
+			simpleNames.merge(i.substring(i.lastIndexOf('.') + 1), 1, Integer::sum);
+		}
+		final StringBuilder b = new StringBuilder();
+		for (final String i : imports) {
+			if (simpleNames.get(i.substring(i.lastIndexOf('.') + 1)) == 1) {
+				b.append("import " + i + ";\n");
 			}
 		}
+		return b.toString();
+	}
+
+	/**
+	 * @return Name of c that does not depend on imports, for use in generated
+	 *         class declarations.
+	 */
+	private static String getTypeName(final Class<?> c) {
+		final String canonical = c.getCanonicalName();
+		return canonical != null ? canonical : c.getSimpleName();
+	}
+
+	private String getInterfaceSourceCode(final String className, final Class<?> samInterface,
+			final SingleAbstractMethod sam, final Class<?>[] extraImports, final String body) {
+		final Set<Class<?>> referenced = new HashSet<>();
+		final String classSource = sam.getClassSource(className, body, referenced);
+		return getImports(getImportName(samInterface), referenced.toArray(new Class<?>[0]), extraImports)
+				+ classSource;
+	}
+
+	private String getFunctionalSourceCode(final String className, final Class<?> argType, final Class<?> returnType,
+			final Class<?>[] extraImports, final String body) {
+		final String argT = getTypeName(argType);
+		final String retT = getTypeName(returnType);
+		final StringBuilder builder = new StringBuilder();
+		builder.append(getImports(Function.class.getName(), new Class<?>[] { argType, returnType }, extraImports));
 		builder.append("public class " + className + " implements Function<" + argT + "," + retT + "> {\n");
 		builder.append("public " + retT + " apply(" + argT + " arg) {\n");
 		builder.append(body);
@@ -289,40 +1287,15 @@ public class RuntimeCompiler {
 		return builder.toString();
 	}
 
-	private boolean isImportable(final Class<?> c) {
-		if (c.isPrimitive()) {
-			return false;
-		} else if (c.equals(Boolean.class) || c.equals(Byte.class) || c.equals(Character.class) || c.equals(Short.class)
-				|| c.equals(Integer.class) || c.equals(Long.class) || c.equals(Float.class) || c.equals(Double.class)
-				|| c.equals(Void.class)) {
-			return false;
-		} else {
-			return true;
-		}
-	}
-
 	private String getBiFunctionalSourceCode(final String className, final Class<?> arg1Type, final Class<?> arg2Type,
 			final Class<?> returnType, final Class<?>[] extraImports, final String body) {
-		final String arg1T = arg1Type.getSimpleName();
-		final String arg2T = arg2Type.getSimpleName();
-		final String retT = returnType.getSimpleName();
+		final String arg1T = getTypeName(arg1Type);
+		final String arg2T = getTypeName(arg2Type);
+		final String retT = getTypeName(returnType);
 
 		final StringBuilder b = new StringBuilder();
-		b.append("import java.util.function.BiFunction;\n");
-		if (isImportable(arg1Type)) {
-			b.append("import " + getImportName(arg1Type) + ";\n");
-		}
-		if (isImportable(arg2Type)) {
-			b.append("import " + getImportName(arg2Type) + ";\n");
-		}
-		if (isImportable(returnType)) {
-			b.append("import " + getImportName(returnType) + ";\n");
-		}
-		for (final Class<?> c : extraImports) {
-			if (isImportable(returnType)) {
-				b.append("import " + getImportName(c) + ";\n");
-			}
-		}
+		b.append(getImports(BiFunction.class.getName(), new Class<?>[] { arg1Type, arg2Type, returnType },
+				extraImports));
 		b.append("public class " + className + " implements BiFunction<" + arg1T + "," + arg2T + "," + retT + "> {\n");
 		b.append("public " + retT + " apply(" + arg1T + " arg1, " + arg2T + " arg2) {\n");
 		b.append(body);
@@ -332,18 +1305,34 @@ public class RuntimeCompiler {
 		return b.toString();
 	}
 
-	private void compile(final String className, final String sourceCode,
+	private void requireCompiler() throws CompilationException {
+		if (compilerReference == null) {
+			throw new CompilationException("No Java compiler is available in this runtime");
+		}
+	}
+
+	private void compile(final List<InMemorySourceFile> sourceUnits,
 			final DiagnosticCollector<JavaFileObject> collector, final JavaFileManager wrappedManager)
 			throws CompilationException {
-		final InMemorySourceFile stringObject = new InMemorySourceFile(className, sourceCode);
-		final List<InMemorySourceFile> sourceUnits = Arrays.asList(stringObject);
-
-		final JavaCompiler.CompilationTask task = compilerReference.getTask(null, wrappedManager, collector, null, null,
-				sourceUnits);
+		final List<String> classNames = new ArrayList<>();
+		for (final InMemorySourceFile unit : sourceUnits) {
+			classNames.add(unit.getClassName());
+		}
 
-		if (!task.call()) {
-			compilationError(collector);
+		final long start = System.nanoTime();
+		try {
+			final JavaCompiler.CompilationTask task = compilerReference.getTask(null, wrappedManager, collector,
+					profile.getOptions(), null, sourceUnits);
+			if (!task.call()) {
+				compilationError(collector);
+			}
+		} catch (final CompilationException e) {
+			fire(l -> l.compilationFailed(classNames, e));
+			throw e;
+		} finally {
+			firePhase(CompilePhase.JAVAC, start);
 		}
+		fire(l -> l.compiled(classNames));
 	}
 
 }
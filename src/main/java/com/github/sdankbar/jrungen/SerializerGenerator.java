@@ -0,0 +1,213 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Generates {@link BinaryCodec}s that encode the public fields of a class to a
+ * ByteBuffer, heap or direct, without reflection.
+ *
+ * Supported field types are primitives, String and arrays of primitives.
+ * Primitives are written with a fixed size, booleans as one byte. Strings and
+ * arrays are written as an int length, -1 for null, followed by their chars or
+ * elements. Fields are encoded in name order and the class must have a public
+ * no-argument constructor.
+ */
+public final class SerializerGenerator {
+
+	private static final String BUFFER = "buffer";
+	private static final String VALUE = "value";
+
+	private final RuntimeCompiler compiler;
+	private final GeneratedInstanceCache<Class<?>, BinaryCodec<?>> codecs = new GeneratedInstanceCache<>();
+
+	/**
+	 * @param compiler Compiler used to compile codecs.
+	 */
+	public SerializerGenerator(final RuntimeCompiler compiler) {
+		this.compiler = Objects.requireNonNull(compiler, "compiler is null");
+	}
+
+	/**
+	 * @return Codec for type, compiled on first use.
+	 * @throws CompilationException Thrown if type has a field of an unsupported
+	 *                              type, a final field, no public no-argument
+	 *                              constructor, or the codec fails to compile.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> BinaryCodec<T> getCodec(final Class<T> type) throws CompilationException {
+		Objects.requireNonNull(type, "type is null");
+		final BinaryCodec<?> cached = codecs.get(type);
+		if (cached != null) {
+			return (BinaryCodec<T>) cached;
+		}
+
+		final List<Field> fields = getFields(type);
+		final String className = RuntimeCompiler.contentAddressedName("Codec", getSource("Codec", type, fields));
+		final BinaryCodec<T> codec = RuntimeCompiler
+				.constructInstance(compiler.<BinaryCodec<T>>compile(className, getSource(className, type, fields)));
+		return (BinaryCodec<T>) codecs.putIfAbsent(type, codec);
+	}
+
+	private static List<Field> getFields(final Class<?> type) throws CompilationException {
+		try {
+			type.getConstructor();
+		} catch (final NoSuchMethodException e) {
+			throw new CompilationException(type.getName() + " has no public no-argument constructor", e);
+		}
+
+		final List<Field> fields = new ArrayList<>();
+		for (final Field f : type.getFields()) {
+			final int modifiers = f.getModifiers();
+			if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+				continue;
+			} else if (Modifier.isFinal(modifiers)) {
+				throw new CompilationException("Cannot decode final field " + f);
+			}
+			final Class<?> t = f.getType().isArray() ? f.getType().getComponentType() : f.getType();
+			if (!t.isPrimitive() && !(t.equals(String.class) && !f.getType().isArray())) {
+				throw new CompilationException("Unsupported field type " + f);
+			}
+			fields.add(f);
+		}
+		fields.sort(Comparator.comparing(Field::getName));
+		return fields;
+	}
+
+	private static long fingerprint(final Class<?> type, final List<Field> fields) {
+		final StringBuilder schema = new StringBuilder(type.getName());
+		for (final Field f : fields) {
+			schema.append(';').append(f.getName()).append(':').append(f.getType().getName());
+		}
+		return Long.parseUnsignedLong(ContentHash.of(schema.toString()).substring(0, 16), 16);
+	}
+
+	private static String getSource(final String className, final Class<?> type, final List<Field> fields) {
+		final String typeName = type.getCanonicalName();
+		final long fingerprint = fingerprint(type, fields);
+		int fixedSize = Long.BYTES;
+		final StringBuilder size = new StringBuilder();
+		final StringBuilder encode = new StringBuilder();
+		final StringBuilder decode = new StringBuilder();
+		for (final Field f : fields) {
+			final String access = VALUE + "." + f.getName();
+			final Class<?> t = f.getType();
+			if (t.isPrimitive()) {
+				fixedSize += sizeOf(t);
+				encode.append(put(t, access)).append(";\n");
+				decode.append(access + " = " + get(t) + ";\n");
+			} else {
+				fixedSize += Integer.BYTES;
+				final Class<?> element = t.isArray() ? t.getComponentType() : char.class;
+				final String length = t.isArray() ? access + ".length" : access + ".length()";
+				size.append("if (" + access + " != null) { size += " + sizeOf(element) + " * " + length + "; }\n");
+				encode.append("if (" + access + " == null) {\n" + BUFFER + ".putInt(-1);\n} else {\n" + BUFFER
+						+ ".putInt(" + length + ");\n");
+				decode.append("{\nfinal int n = " + BUFFER + ".getInt();\nif (n < 0) {\n" + access
+						+ " = null;\n} else {\n");
+				// Checked before allocating, so a corrupt length cannot exhaust the heap.
+				decode.append("if (n > " + BUFFER + ".remaining() / " + sizeOf(element)
+						+ ") {\nthrow new InvokationException(\"Length \" + n + \" of " + f.getName()
+						+ " exceeds the remaining \" + " + BUFFER + ".remaining() + \" bytes\");\n}\n");
+				if (t.equals(byte[].class)) {
+					encode.append(BUFFER + ".put(" + access + ");\n");
+					decode.append(access + " = new byte[n];\n" + BUFFER + ".get(" + access + ");\n");
+				} else if (t.isArray()) {
+					encode.append("for (int i = 0; i < " + length + "; ++i) {\n" + put(element, access + "[i]")
+							+ ";\n}\n");
+					decode.append(access + " = new " + element.getName() + "[n];\nfor (int i = 0; i < n; ++i) {\n"
+							+ access + "[i] = " + get(element) + ";\n}\n");
+				} else {
+					encode.append("for (int i = 0; i < " + length + "; ++i) {\n" + put(char.class, access
+							+ ".charAt(i)") + ";\n}\n");
+					decode.append("final char[] chars = new char[n];\nfor (int i = 0; i < n; ++i) {\nchars[i] = "
+							+ get(char.class) + ";\n}\n" + access + " = new String(chars);\n");
+				}
+				encode.append("}\n");
+				decode.append("}\n}\n");
+			}
+		}
+
+		final StringBuilder b = new StringBuilder();
+		b.append("import " + ByteBuffer.class.getName() + ";\n");
+		b.append("import " + BinaryCodec.class.getName() + ";\n");
+		b.append("import " + InvokationException.class.getName() + ";\n");
+		b.append("public class " + className + " implements BinaryCodec<" + typeName + "> {\n");
+		b.append("public long fingerprint() {\nreturn " + fingerprint + "L;\n}\n");
+		b.append("public int encodedSize(" + typeName + " " + VALUE + ") {\nint size = " + fixedSize + ";\n" + size
+				+ "return size;\n}\n");
+		b.append("public void encode(" + typeName + " " + VALUE + ", ByteBuffer " + BUFFER + ") {\n" + BUFFER
+				+ ".putLong(" + fingerprint + "L);\n" + encode + "}\n");
+		b.append("public " + typeName + " decode(ByteBuffer " + BUFFER + ") {\n");
+		b.append("final long fingerprint = " + BUFFER + ".getLong();\n");
+		b.append("if (fingerprint != " + fingerprint + "L) {\nthrow new InvokationException(\"Expected schema "
+				+ fingerprint + " for " + typeName + " but found \" + fingerprint);\n}\n");
+		b.append("final " + typeName + " " + VALUE + " = new " + typeName + "();\n" + decode + "return " + VALUE
+				+ ";\n}\n");
+		b.append("}\n");
+		return b.toString();
+	}
+
+	private static int sizeOf(final Class<?> t) {
+		if (t.equals(boolean.class) || t.equals(byte.class)) {
+			return 1;
+		} else if (t.equals(short.class) || t.equals(char.class)) {
+			return 2;
+		} else if (t.equals(int.class) || t.equals(float.class)) {
+			return 4;
+		} else {
+			return 8;
+		}
+	}
+
+	private static String put(final Class<?> t, final String expression) {
+		if (t.equals(boolean.class)) {
+			return BUFFER + ".put(" + expression + " ? (byte) 1 : (byte) 0)";
+		} else if (t.equals(byte.class)) {
+			return BUFFER + ".put(" + expression + ")";
+		} else {
+			return BUFFER + ".put" + capitalize(t.getName()) + "(" + expression + ")";
+		}
+	}
+
+	private static String get(final Class<?> t) {
+		if (t.equals(boolean.class)) {
+			return "(" + BUFFER + ".get() != 0)";
+		} else if (t.equals(byte.class)) {
+			return BUFFER + ".get()";
+		} else {
+			return BUFFER + ".get" + capitalize(t.getName()) + "()";
+		}
+	}
+
+	private static String capitalize(final String s) {
+		return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The single abstract method of a functional interface, with the interface's
+ * type parameters resolved to the types an implementation is generated for.
+ */
+final class SingleAbstractMethod {
+
+	/**
+	 * @param iface         Interface with a single abstract method.
+	 * @param typeArguments Types for each of the interface's type parameters.
+	 *                      Empty to implement the raw interface.
+	 * @return The resolved method.
+	 * @throws CompilationException Thrown if iface is not a functional interface
+	 *                              or the wrong number of type arguments are
+	 *                              given.
+	 */
+	static SingleAbstractMethod of(final Class<?> iface, final Class<?>[] typeArguments) throws CompilationException {
+		if (!iface.isInterface()) {
+			throw new CompilationException(iface.getName() + " is not an interface");
+		}
+		final TypeVariable<?>[] params = iface.getTypeParameters();
+		if (typeArguments.length != 0 && typeArguments.length != params.length) {
+			throw new CompilationException(iface.getName() + " has " + params.length + " type parameters but "
+					+ typeArguments.length + " type arguments were given");
+		}
+
+		Method sam = null;
+		for (final Method m : iface.getMethods()) {
+			if (Modifier.isAbstract(m.getModifiers()) && !isObjectMethod(m)) {
+				if (sam != null && !overrides(sam, m) && !overrides(m, sam)) {
+					throw new CompilationException(iface.getName() + " has more than one abstract method");
+				} else if (sam == null || overrides(m, sam)) {
+					sam = m;
+				}
+			}
+		}
+		if (sam == null) {
+			throw new CompilationException(iface.getName() + " has no abstract methods");
+		}
+
+		final Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+		for (int i = 0; i < typeArguments.length; ++i) {
+			bindings.put(params[i], typeArguments[i]);
+		}
+		bindSuperInterfaces(iface, bindings);
+		return new SingleAbstractMethod(iface, typeArguments, sam, bindings);
+	}
+
+	private static boolean isObjectMethod(final Method m) {
+		try {
+			Object.class.getMethod(m.getName(), m.getParameterTypes());
+			return true;
+		} catch (final NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return True if a is the same method as b, redeclared in a subinterface.
+	 */
+	private static boolean overrides(final Method a, final Method b) {
+		return a.getName().equals(b.getName()) && a.getParameterCount() == b.getParameterCount()
+				&& b.getDeclaringClass().isAssignableFrom(a.getDeclaringClass());
+	}
+
+	private static void bindSuperInterfaces(final Class<?> iface, final Map<TypeVariable<?>, Type> bindings) {
+		for (final Type t : iface.getGenericInterfaces()) {
+			if (t instanceof ParameterizedType) {
+				final ParameterizedType p = (ParameterizedType) t;
+				final Class<?> raw = (Class<?>) p.getRawType();
+				final TypeVariable<?>[] vars = raw.getTypeParameters();
+				final Type[] args = p.getActualTypeArguments();
+				for (int i = 0; i < vars.length; ++i) {
+					bindings.put(vars[i], resolve(args[i], bindings));
+				}
+				bindSuperInterfaces(raw, bindings);
+			} else if (t instanceof Class) {
+				bindSuperInterfaces((Class<?>) t, bindings);
+			}
+		}
+	}
+
+	private static Type resolve(final Type t, final Map<TypeVariable<?>, Type> bindings) {
+		if (t instanceof TypeVariable && bindings.containsKey(t)) {
+			return bindings.get(t);
+		} else {
+			return t;
+		}
+	}
+
+	private final Class<?> iface;
+	private final Class<?>[] typeArguments;
+	private final Method method;
+	private final Map<TypeVariable<?>, Type> bindings;
+
+	private SingleAbstractMethod(final Class<?> iface, final Class<?>[] typeArguments, final Method method,
+			final Map<TypeVariable<?>, Type> bindings) {
+		this.iface = iface;
+		this.typeArguments = typeArguments.clone();
+		this.method = method;
+		this.bindings = bindings;
+	}
+
+	Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return The method's parameter types, with the interface's type parameters
+	 *         replaced by their erasure.
+	 */
+	Class<?>[] getParameterTypes() {
+		final Type[] generic = method.getGenericParameterTypes();
+		final Class<?>[] types = new Class<?>[generic.length];
+		for (int i = 0; i < generic.length; ++i) {
+			types[i] = erasure(resolve(generic[i], bindings));
+		}
+		return types;
+	}
+
+	/**
+	 * @return The method's return type, with the interface's type parameters
+	 *         replaced by their erasure.
+	 */
+	Class<?> getReturnType() {
+		return erasure(resolve(method.getGenericReturnType(), bindings));
+	}
+
+	/**
+	 * @param className Name of the class to generate.
+	 * @param body      Body of the method.
+	 * @param imported  Classes referenced by the generated source are added to
+	 *                  this set.
+	 * @return Source of the class, excluding imports.
+	 */
+	String getClassSource(final String className, final String body, final Set<Class<?>> imported) {
+		imported.add(iface);
+		final StringBuilder b = new StringBuilder();
+		b.append("public class " + className + " implements " + iface.getSimpleName());
+		if (typeArguments.length > 0) {
+			final List<String> args = new ArrayList<>();
+			for (final Class<?> c : typeArguments) {
+				args.add(render(c, imported));
+			}
+			b.append("<" + String.join(",", args) + ">");
+		}
+		b.append(" {\n");
+
+		final Type[] params = method.getGenericParameterTypes();
+		b.append("public " + render(method.getGenericReturnType(), imported) + " " + method.getName() + "(");
+		for (int i = 0; i < params.length; ++i) {
+			if (i > 0) {
+				b.append(", ");
+			}
+			b.append(render(params[i], imported) + " " + parameterName(i, params.length));
+		}
+		b.append(")");
+		final Class<?>[] exceptions = method.getExceptionTypes();
+		if (exceptions.length > 0) {
+			final Set<String> names = new LinkedHashSet<>();
+			for (final Class<?> e : exceptions) {
+				names.add(render(e, imported));
+			}
+			b.append(" throws " + String.join(", ", names));
+		}
+		b.append(" {\n");
+		b.append(body);
+		b.append("}\n");
+		b.append("}\n");
+		return b.toString();
+	}
+
+	/**
+	 * @return Name of a parameter in generated source. Methods with a single
+	 *         parameter name it "arg", otherwise they are named "arg1", "arg2"...
+	 */
+	static String parameterName(final int index, final int count) {
+		return count == 1 ? "arg" : "arg" + (index + 1);
+	}
+
+	private String render(final Type type, final Set<Class<?>> imported) {
+		final Type t = resolve(type, bindings);
+		if (t instanceof Class) {
+			final Class<?> c = (Class<?>) t;
+			imported.add(c);
+			return c.getSimpleName();
+		} else if (t instanceof ParameterizedType) {
+			final ParameterizedType p = (ParameterizedType) t;
+			final List<String> args = new ArrayList<>();
+			for (final Type a : p.getActualTypeArguments()) {
+				args.add(render(a, imported));
+			}
+			return render(p.getRawType(), imported) + "<" + String.join(",", args) + ">";
+		} else if (t instanceof GenericArrayType) {
+			return render(((GenericArrayType) t).getGenericComponentType(), imported) + "[]";
+		} else if (t instanceof WildcardType) {
+			final WildcardType w = (WildcardType) t;
+			if (w.getLowerBounds().length > 0) {
+				return "? super " + render(w.getLowerBounds()[0], imported);
+			} else if (!Arrays.equals(w.getUpperBounds(), new Type[] { Object.class })) {
+				return "? extends " + render(w.getUpperBounds()[0], imported);
+			} else {
+				return "?";
+			}
+		} else {
+			// Unbound type variable, as when implementing a raw interface.
+			return render(erasure(t), imported);
+		}
+	}
+
+	private Class<?> erasure(final Type t) {
+		if (t instanceof Class) {
+			return (Class<?>) t;
+		} else if (t instanceof ParameterizedType) {
+			return (Class<?>) ((ParameterizedType) t).getRawType();
+		} else if (t instanceof GenericArrayType) {
+			final Class<?> component = erasure(resolve(((GenericArrayType) t).getGenericComponentType(), bindings));
+			return Array.newInstance(component, 0).getClass();
+		} else if (t instanceof TypeVariable) {
+			return erasure(resolve(((TypeVariable<?>) t).getBounds()[0], bindings));
+		} else {
+			return erasure(((WildcardType) t).getUpperBounds()[0]);
+		}
+	}
+}
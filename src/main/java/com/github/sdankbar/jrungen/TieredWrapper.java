@@ -0,0 +1,222 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves calls on a reflected member from reflection to faster tiers as the
+ * number of calls grows: an optional MethodHandle tier once the member has been
+ * used methodHandleThreshold times and a compiled tier once it has been used
+ * compileThreshold times. Compilation happens in the background, calls use the
+ * previous tier until the compiler thread publishes the compiled one.
+ *
+ * @param <S> Type of the object that performs calls for a tier.
+ */
+abstract class TieredWrapper<S> {
+
+	static final RuntimeCompiler COMPILER = new RuntimeCompiler();
+
+	private static final Logger log = LoggerFactory.getLogger(TieredWrapper.class);
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<TieredWrapper, Tier> TIER = AtomicReferenceFieldUpdater
+			.newUpdater(TieredWrapper.class, Tier.class, "tier");
+
+	/**
+	 * Immutable and only read through final fields, so it is safely published
+	 * however the reference to it is shared.
+	 */
+	private static final class Tier<S> {
+		private final S calls;
+		// True once no further tier changes are triggered by counting, either
+		// because compilation has started or because this is the last tier.
+		private final boolean isFinal;
+		private final boolean isCompiled;
+		// True while calls are counted, which is until compiled code takes over or
+		// compilation fails.
+		private final boolean isCounted;
+
+		private Tier(final S calls, final boolean isFinal, final boolean isCompiled, final boolean isCounted) {
+			this.calls = calls;
+			this.isFinal = isFinal;
+			this.isCompiled = isCompiled;
+			this.isCounted = isCounted;
+		}
+	}
+
+	/**
+	 * @return Compiler shared by every reflection wrapper. Add a
+	 *         {@link CompilerListener} to it to observe wrapper compilation.
+	 */
+	public static RuntimeCompiler getCompiler() {
+		return COMPILER;
+	}
+
+	private final int methodHandleThreshold;
+	private final int compileThreshold;
+	// Only moves forward. Counting tiers are replaced with compareAndSet, the
+	// compiled tier is written once by the compiler thread.
+	private volatile Tier<S> tier;
+	private CompletableFuture<?> compileFuture = null;
+	// Striped, so threads calling the same member do not contend on one counter.
+	private final LongAdder calls = new LongAdder();
+	private volatile boolean methodHandleTried = false;
+
+	TieredWrapper(final int methodHandleThreshold, final int compileThreshold) {
+		this.methodHandleThreshold = methodHandleThreshold;
+		this.compileThreshold = compileThreshold;
+	}
+
+	/**
+	 * Creates a wrapper without a MethodHandle tier, which moves straight from
+	 * reflection to compiled code.
+	 */
+	TieredWrapper(final int compileThreshold) {
+		this(Integer.MAX_VALUE, compileThreshold);
+		methodHandleTried = true;
+	}
+
+	/**
+	 * Sets the reflective tier. Called at the end of the subclass constructor, as
+	 * it may start compiling straight away.
+	 */
+	final void start(final S reflective) {
+		tier = new Tier<>(reflective, false, false, true);
+		if (compileThreshold <= 0) {
+			startCompilation();
+		}
+	}
+
+	/**
+	 * Starts on the compiled tier, for members with code generated at build time.
+	 */
+	final synchronized void startCompiled(final S compiled) {
+		tier = new Tier<>(compiled, true, true, false);
+		compileFuture = CompletableFuture.completedFuture(compiled);
+	}
+
+	/**
+	 * @return Calls for the MethodHandle tier, or null to stay on reflection.
+	 */
+	abstract S createMethodHandleTier();
+
+	/**
+	 * @return Future for the calls of the compiled tier.
+	 */
+	abstract CompletableFuture<S> compile();
+
+	/**
+	 * @return The reflected member, for log messages.
+	 */
+	abstract Object getMember();
+
+	/**
+	 * Compiles if compilation has not already started and waits for the compiled
+	 * tier to be used.
+	 */
+	public void forceCompilation() {
+		try {
+			startCompilation().get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InvokationException(e);
+		} catch (final ExecutionException e) {
+			throw new InvokationException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return True if calls are made through compiled code.
+	 */
+	public boolean isCompiled() {
+		return tier.isCompiled;
+	}
+
+	private synchronized CompletableFuture<?> startCompilation() {
+		if (compileFuture == null) {
+			// Stop counting before submitting, so no later counting tier can replace
+			// the compiled one.
+			Tier<S> current;
+			do {
+				current = tier;
+			} while (!TIER.compareAndSet(this, current, new Tier<>(current.calls, true, false, true)));
+
+			compileFuture = compile().whenComplete((compiled, e) -> {
+				if (e == null) {
+					tier = new Tier<>(compiled, true, true, false);
+					final long reflectiveCalls = calls.sum();
+					COMPILER.fire(l -> l.wrapperCompiled(getMember(), reflectiveCalls));
+				} else {
+					tier = new Tier<>(tier.calls, true, false, false);
+					log.warn("Error compiling " + getMember() + ", staying on the current tier", e);
+				}
+			});
+		}
+		return compileFuture;
+	}
+
+	/**
+	 * Counts a call and moves to the next tier if a threshold has been reached.
+	 */
+	private void countCall(final Tier<S> current) {
+		calls.increment();
+		if (current.isFinal) {
+			return;
+		}
+		final long count = calls.sum();
+		if (count >= compileThreshold) {
+			startCompilation();
+		} else if (count >= methodHandleThreshold && !methodHandleTried) {
+			startMethodHandles(current);
+		}
+	}
+
+	private synchronized void startMethodHandles(final Tier<S> current) {
+		if (methodHandleTried) {
+			return;
+		}
+		methodHandleTried = true;
+		final S handles = createMethodHandleTier();
+		if (handles != null) {
+			// Fails if compilation started in the meantime.
+			TIER.compareAndSet(this, current, new Tier<>(handles, false, false, true));
+		}
+	}
+
+	/**
+	 * @return Calls for the current tier.
+	 */
+	final S calls() {
+		final Tier<S> t = tier;
+		if (t.isCounted) {
+			countCall(t);
+		}
+		return t.calls;
+	}
+}
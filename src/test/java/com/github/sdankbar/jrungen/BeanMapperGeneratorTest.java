@@ -0,0 +1,249 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.function.BiFunction;
+
+import org.junit.Test;
+
+/**
+ * Tests the BeanMapperGenerator class.
+ */
+public class BeanMapperGeneratorTest {
+
+	/**
+	 * Bean with public fields.
+	 */
+	public static class PersonDto {
+		public String name;
+		public int age;
+		public String nickname;
+	}
+
+	/**
+	 * Bean with getters and setters.
+	 */
+	public static class Person {
+		private String name;
+		private Integer age;
+		private String alias;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(final String name) {
+			this.name = name;
+		}
+
+		public Integer getAge() {
+			return age;
+		}
+
+		public void setAge(final Integer age) {
+			this.age = age;
+		}
+
+		public String getAlias() {
+			return alias;
+		}
+
+		public void setAlias(final String alias) {
+			this.alias = alias;
+		}
+	}
+
+	/**
+	 * Bean with a getter that is overridden covariantly.
+	 */
+	public static class Base {
+		public Object getValue() {
+			return null;
+		}
+	}
+
+	/**
+	 * Overrides getValue with a narrower return type.
+	 */
+	public static class Sub extends Base {
+		@Override
+		public String getValue() {
+			return "v";
+		}
+	}
+
+	/**
+	 * Bean with a String property.
+	 */
+	public static class Dst {
+		public String value;
+	}
+
+	/**
+	 * Bean with the same simple name as {@link Domain.Dto}.
+	 */
+	public static class Dto {
+		public String name;
+	}
+
+	/**
+	 * Holds a second class called Dto.
+	 */
+	public static class Domain {
+		/**
+		 * Bean with the same simple name as {@link BeanMapperGeneratorTest.Dto}.
+		 */
+		public static class Dto {
+			private String name;
+
+			public String getName() {
+				return name;
+			}
+
+			public void setName(final String name) {
+				this.name = name;
+			}
+		}
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_mapByName() throws CompilationException {
+		final BeanMapperGenerator g = new BeanMapperGenerator(new RuntimeCompiler());
+		final BiFunction<PersonDto, Person, Person> mapper = g.getMapper(PersonDto.class, Person.class);
+
+		final PersonDto dto = new PersonDto();
+		dto.name = "Ann";
+		dto.age = 31;
+		dto.nickname = "A";
+		final Person p = mapper.apply(dto, new Person());
+		assertEquals("Ann", p.getName());
+		assertEquals(Integer.valueOf(31), p.getAge());
+		assertEquals(null, p.getAlias());
+		assertSame(mapper, g.getMapper(PersonDto.class, Person.class));
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_explicitMapping() throws CompilationException {
+		final BeanMapperGenerator g = new BeanMapperGenerator(new RuntimeCompiler());
+		final BiFunction<PersonDto, Person, Person> mapper = g.getMapper(PersonDto.class, Person.class,
+				Collections.singletonMap("alias", "nickname"));
+
+		final PersonDto dto = new PersonDto();
+		dto.name = "Ann";
+		dto.nickname = "A";
+		final Person p = mapper.apply(dto, new Person());
+		assertEquals("A", p.getAlias());
+		assertEquals(null, p.getName());
+	}
+
+	/**
+	 * Mappers from a retired generation are not served from the cache.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_retiredMapper() throws CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		final BeanMapperGenerator g = new BeanMapperGenerator(c);
+		final BiFunction<PersonDto, Person, Person> mapper = g.getMapper(PersonDto.class, Person.class);
+		assertSame(mapper, g.getMapper(PersonDto.class, Person.class));
+
+		c.retireGeneration(c.getGeneration());
+		final BiFunction<PersonDto, Person, Person> recompiled = g.getMapper(PersonDto.class, Person.class);
+		assertNotSame(mapper, recompiled);
+		assertNotSame(mapper.getClass(), recompiled.getClass());
+	}
+
+	/**
+	 * The covariant override is used rather than its bridge method.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_covariantGetter() throws CompilationException {
+		assertEquals(String.class, Property.readable(Sub.class).get("value").getType());
+		final BiFunction<Sub, Dst, Dst> mapper = new BeanMapperGenerator(new RuntimeCompiler()).getMapper(Sub.class,
+				Dst.class);
+		assertEquals("v", mapper.apply(new Sub(), new Dst()).value);
+	}
+
+	/**
+	 * Null wrapper values leave primitive properties unchanged.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_nullToPrimitive() throws CompilationException {
+		final BiFunction<Person, PersonDto, PersonDto> mapper = new BeanMapperGenerator(new RuntimeCompiler())
+				.getMapper(Person.class, PersonDto.class);
+		final PersonDto dto = new PersonDto();
+		dto.age = 5;
+		assertEquals(5, mapper.apply(new Person(), dto).age);
+
+		final Person p = new Person();
+		p.setAge(40);
+		assertEquals(40, mapper.apply(p, dto).age);
+	}
+
+	/**
+	 * Classes that share a simple name can be mapped.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_sameSimpleName() throws CompilationException {
+		final BiFunction<Dto, Domain.Dto, Domain.Dto> mapper = new BeanMapperGenerator(new RuntimeCompiler())
+				.getMapper(Dto.class, Domain.Dto.class);
+		final Dto dto = new Dto();
+		dto.name = "Ann";
+		assertEquals("Ann", mapper.apply(dto, new Domain.Dto()).getName());
+	}
+
+	/**
+	 * Mappings with incompatible types are rejected.
+	 */
+	@Test
+	public void test_invalidMapping() {
+		final BeanMapperGenerator g = new BeanMapperGenerator(new RuntimeCompiler());
+		try {
+			g.getMapper(Person.class, PersonDto.class, Collections.singletonMap("age", "alias"));
+			fail();
+		} catch (final CompilationException e) {
+			assertTrue(e.getMessage().contains("for property age"));
+			assertTrue(e.getUnitErrors().isEmpty());
+		}
+	}
+}
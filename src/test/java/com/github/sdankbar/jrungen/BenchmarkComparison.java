@@ -0,0 +1,329 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files and reports benchmarks that regressed.
+ *
+ * Usage: {@code BenchmarkComparison baseline.json current.json [thresholdPercent]}.
+ * Exits with status 1 if anything regressed by more than the threshold,
+ * default 10%, and by more than the combined error of the two results.
+ */
+public final class BenchmarkComparison {
+
+	/**
+	 * Secondary metrics that are compared as well as the primary score. Lower is
+	 * better for all of them.
+	 */
+	private static final List<String> SECONDARY = Collections
+			.unmodifiableList(Arrays.asList("\u00b7gc.alloc.rate.norm", "metaspaceBytesPer10kClasses"));
+
+	/**
+	 * One measured value of one benchmark.
+	 */
+	static final class Metric {
+		final double score;
+		final double error;
+		final String unit;
+		final boolean higherIsBetter;
+
+		Metric(final double score, final double error, final String unit, final boolean higherIsBetter) {
+			this.score = score;
+			this.error = Double.isNaN(error) ? 0 : error;
+			this.unit = unit;
+			this.higherIsBetter = higherIsBetter;
+		}
+	}
+
+	/**
+	 * @return Map of "benchmark [params] threads metric" to its value, for the
+	 *         primary score, the p50 and p99 of sampled benchmarks and the
+	 *         tracked secondary metrics.
+	 * @throws IOException Thrown if file cannot be read or is not valid JSON.
+	 */
+	@SuppressWarnings("unchecked")
+	static Map<String, Metric> read(final Path file) throws IOException {
+		final Object json = new JsonReader(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).read();
+		if (!(json instanceof List)) {
+			throw new IOException(file + " is not a JMH JSON result file");
+		}
+
+		final Map<String, Metric> metrics = new TreeMap<>();
+		for (final Object o : (List<Object>) json) {
+			final Map<String, Object> result = (Map<String, Object>) o;
+			final Object params = result.get("params");
+			final String name = result.get("benchmark") + (params != null ? " " + params : "") + " threads="
+					+ (int) number(result.get("threads"));
+			final boolean higherIsBetter = "thrpt".equals(result.get("mode"));
+
+			final Map<String, Object> primary = (Map<String, Object>) result.get("primaryMetric");
+			final String unit = (String) primary.get("scoreUnit");
+			metrics.put(name + " score",
+					new Metric(number(primary.get("score")), number(primary.get("scoreError")), unit, higherIsBetter));
+			if ("sample".equals(result.get("mode"))) {
+				final Map<String, Object> percentiles = (Map<String, Object>) primary.get("scorePercentiles");
+				metrics.put(name + " p50", new Metric(number(percentiles.get("50.0")), 0, unit, false));
+				metrics.put(name + " p99", new Metric(number(percentiles.get("99.0")), 0, unit, false));
+			}
+
+			final Map<String, Object> secondary = (Map<String, Object>) result.get("secondaryMetrics");
+			if (secondary != null) {
+				for (final String metric : SECONDARY) {
+					final Map<String, Object> m = (Map<String, Object>) secondary.get(metric);
+					if (m != null) {
+						metrics.put(name + " " + metric, new Metric(number(m.get("score")),
+								number(m.get("scoreError")), (String) m.get("scoreUnit"), false));
+					}
+				}
+			}
+		}
+		return metrics;
+	}
+
+	private static double number(final Object value) {
+		if (value instanceof Double) {
+			return (Double) value;
+		} else if (value instanceof String) {
+			// JMH writes NaN and infinities as strings.
+			return Double.parseDouble((String) value);
+		} else {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * @param thresholdPercent Smallest change, as a percentage of the baseline,
+	 *                         that counts as a regression.
+	 * @return Description of each metric in current that is worse than in
+	 *         baseline by more than thresholdPercent and by more than the
+	 *         combined error of the two measurements.
+	 */
+	static List<String> compare(final Map<String, Metric> baseline, final Map<String, Metric> current,
+			final double thresholdPercent) {
+		final List<String> regressions = new ArrayList<>();
+		for (final Map.Entry<String, Metric> e : current.entrySet()) {
+			final Metric before = baseline.get(e.getKey());
+			final Metric after = e.getValue();
+			if (before == null || before.score == 0 || Double.isNaN(before.score) || Double.isNaN(after.score)) {
+				continue;
+			}
+
+			final double worse = before.higherIsBetter ? before.score - after.score : after.score - before.score;
+			final double percent = 100 * worse / Math.abs(before.score);
+			if (percent > thresholdPercent && worse > before.error + after.error) {
+				regressions.add(String.format("%s: %.3f -> %.3f %s (%.1f%% worse)", e.getKey(), before.score,
+						after.score, after.unit, percent));
+			}
+		}
+		return regressions;
+	}
+
+	/**
+	 * @param args Baseline file, current file and optional threshold percentage.
+	 * @throws IOException Thrown if either file cannot be read.
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println("Usage: BenchmarkComparison baseline.json current.json [thresholdPercent]");
+			System.exit(2);
+		}
+		final Map<String, Metric> baseline = read(Paths.get(args[0]));
+		final Map<String, Metric> current = read(Paths.get(args[1]));
+		final double threshold = args.length == 3 ? Double.parseDouble(args[2]) : 10;
+
+		for (final Map.Entry<String, Metric> e : current.entrySet()) {
+			final Metric before = baseline.get(e.getKey());
+			System.out.println(String.format("%-100s %14s %14.3f %s", e.getKey(),
+					before == null ? "-" : String.format("%.3f", before.score), e.getValue().score,
+					e.getValue().unit));
+		}
+
+		final List<String> regressions = compare(baseline, current, threshold);
+		if (regressions.isEmpty()) {
+			System.out.println("No regressions above " + threshold + "%");
+		} else {
+			System.out.println("Regressions above " + threshold + "%:");
+			regressions.forEach(System.out::println);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Just enough of a JSON reader for JMH result files. Objects become Maps,
+	 * arrays Lists and numbers Doubles.
+	 */
+	private static final class JsonReader {
+		private final String text;
+		private int pos = 0;
+
+		JsonReader(final String text) {
+			this.text = text;
+		}
+
+		Object read() throws IOException {
+			final Object value = value();
+			skipWhitespace();
+			if (pos != text.length()) {
+				throw error("Unexpected trailing content");
+			}
+			return value;
+		}
+
+		private Object value() throws IOException {
+			skipWhitespace();
+			if (pos >= text.length()) {
+				throw error("Unexpected end of input");
+			}
+			final char c = text.charAt(pos);
+			if (c == '{') {
+				++pos;
+				final Map<String, Object> map = new TreeMap<>();
+				if (!consume('}')) {
+					do {
+						skipWhitespace();
+						final String key = string();
+						expect(':');
+						map.put(key, value());
+					} while (consume(','));
+					expect('}');
+				}
+				return map;
+			} else if (c == '[') {
+				++pos;
+				final List<Object> list = new ArrayList<>();
+				if (!consume(']')) {
+					do {
+						list.add(value());
+					} while (consume(','));
+					expect(']');
+				}
+				return list;
+			} else if (c == '"') {
+				return string();
+			} else if (text.startsWith("true", pos)) {
+				pos += 4;
+				return Boolean.TRUE;
+			} else if (text.startsWith("false", pos)) {
+				pos += 5;
+				return Boolean.FALSE;
+			} else if (text.startsWith("null", pos)) {
+				pos += 4;
+				return null;
+			} else {
+				final int start = pos;
+				while (pos < text.length() && "+-0123456789.eEaNInfinity".indexOf(text.charAt(pos)) >= 0) {
+					++pos;
+				}
+				try {
+					return Double.valueOf(text.substring(start, pos));
+				} catch (final NumberFormatException e) {
+					pos = start;
+					throw error("Invalid value");
+				}
+			}
+		}
+
+		private String string() throws IOException {
+			if (!consume('"')) {
+				throw error("Expected string");
+			}
+			final StringBuilder b = new StringBuilder();
+			while (pos < text.length()) {
+				final char c = text.charAt(pos++);
+				if (c == '"') {
+					return b.toString();
+				} else if (c != '\\') {
+					b.append(c);
+				} else if (pos >= text.length()) {
+					break;
+				} else {
+					final char escaped = text.charAt(pos++);
+					switch (escaped) {
+					case 'n':
+						b.append('\n');
+						break;
+					case 't':
+						b.append('\t');
+						break;
+					case 'r':
+						b.append('\r');
+						break;
+					case 'b':
+						b.append('\b');
+						break;
+					case 'f':
+						b.append('\f');
+						break;
+					case 'u':
+						if (pos + 4 > text.length()) {
+							throw error("Invalid escape");
+						}
+						b.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+						pos += 4;
+						break;
+					default:
+						b.append(escaped);
+					}
+				}
+			}
+			throw error("Unterminated string");
+		}
+
+		private void skipWhitespace() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+				++pos;
+			}
+		}
+
+		private boolean consume(final char c) {
+			skipWhitespace();
+			if (pos < text.length() && text.charAt(pos) == c) {
+				++pos;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(final char c) throws IOException {
+			if (!consume(c)) {
+				throw error("Expected '" + c + "'");
+			}
+		}
+
+		private IOException error(final String message) {
+			return new IOException(message + " at offset " + pos);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.sdankbar.jrungen.BenchmarkComparison.Metric;
+
+/**
+ * Tests the BenchmarkComparison class.
+ */
+public class BenchmarkComparisonTest {
+
+	private static Path write(final double throughput, final double p99, final double alloc) throws IOException {
+		final String json = "[ {\n" //
+				+ "  \"benchmark\" : \"a.B.thrpt\", \"mode\" : \"thrpt\", \"threads\" : 4,\n" //
+				+ "  \"primaryMetric\" : { \"score\" : " + throughput
+				+ ", \"scoreError\" : \"NaN\", \"scoreUnit\" : \"ops/s\" },\n" //
+				+ "  \"secondaryMetrics\" : { \"\\u00b7gc.alloc.rate.norm\" : { \"score\" : " + alloc
+				+ ", \"scoreError\" : 1.0, \"scoreUnit\" : \"B/op\" }, \"\\u00b7gc.count\" : { \"score\" : 3 } }\n" //
+				+ "}, {\n" //
+				+ "  \"benchmark\" : \"a.B.sample\", \"mode\" : \"sample\", \"threads\" : 1,\n" //
+				+ "  \"primaryMetric\" : { \"score\" : 1.0e1, \"scoreError\" : 0.5, \"scoreUnit\" : \"ms/op\",\n" //
+				+ "    \"scorePercentiles\" : { \"50.0\" : 9.0, \"99.0\" : " + p99 + " } }\n" //
+				+ "} ]\n";
+		final Path file = Files.createTempFile("jmh", ".json");
+		file.toFile().deleteOnExit();
+		Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	/**
+	 * @throws IOException e
+	 */
+	@Test
+	public void test_read() throws IOException {
+		final Map<String, Metric> metrics = BenchmarkComparison.read(write(100, 20, 512));
+		assertEquals(5, metrics.size());
+		assertEquals(100, metrics.get("a.B.thrpt threads=4 score").score, 0.0);
+		assertEquals(512, metrics.get("a.B.thrpt threads=4 \u00b7gc.alloc.rate.norm").score, 0.0);
+		assertEquals(20, metrics.get("a.B.sample threads=1 p99").score, 0.0);
+	}
+
+	/**
+	 * Lower throughput and higher latency or allocation are regressions, small
+	 * changes and improvements are not.
+	 *
+	 * @throws IOException e
+	 */
+	@Test
+	public void test_compare() throws IOException {
+		final Map<String, Metric> baseline = BenchmarkComparison.read(write(100, 20, 512));
+
+		assertTrue(BenchmarkComparison.compare(baseline, BenchmarkComparison.read(write(95, 21, 520)), 10).isEmpty());
+		assertTrue(BenchmarkComparison.compare(baseline, BenchmarkComparison.read(write(200, 10, 256)), 10).isEmpty());
+
+		final List<String> regressions = BenchmarkComparison.compare(baseline,
+				BenchmarkComparison.read(write(50, 40, 1024)), 10);
+		assertEquals(regressions.toString(), 3, regressions.size());
+	}
+}
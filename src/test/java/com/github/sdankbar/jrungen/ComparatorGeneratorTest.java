@@ -0,0 +1,130 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.sdankbar.jrungen.ComparatorGenerator.SortKey;
+
+/**
+ * Tests the ComparatorGenerator class.
+ */
+public class ComparatorGeneratorTest {
+
+	/**
+	 * Row with primitive, boxed and object properties.
+	 */
+	public static class Row {
+		public int rank;
+		public double score;
+		public Object tag;
+		private String name;
+
+		public Row(final int rank, final double score, final String name) {
+			this.rank = rank;
+			this.score = score;
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return rank + "/" + score + "/" + name;
+		}
+	}
+
+	/**
+	 * Compiled comparators order the same as the equivalent composed JDK
+	 * comparator.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_matchesComposedComparator() throws CompilationException {
+		final ComparatorGenerator g = new ComparatorGenerator(new RuntimeCompiler());
+		final Comparator<Row> compiled = g.getComparator(Row.class, SortKey.ascending("rank"),
+				SortKey.descending("score"), SortKey.ascending("name").nullsFirst());
+		final Comparator<Row> expected = Comparator.<Row>comparingInt(r -> r.rank)
+				.thenComparing(Comparator.<Row>comparingDouble(r -> r.score).reversed())
+				.thenComparing(Row::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+		final Random rand = new Random(7);
+		final List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < 1000; ++i) {
+			rows.add(new Row(rand.nextInt(5), rand.nextInt(3), rand.nextInt(4) == 0 ? null : "n" + rand.nextInt(4)));
+		}
+		final List<Row> a = new ArrayList<>(rows);
+		final List<Row> b = new ArrayList<>(rows);
+		a.sort(compiled);
+		b.sort(expected);
+		assertEquals(b, a);
+		assertSame(compiled, g.getComparator(Row.class, Arrays.asList(SortKey.ascending("rank"),
+				SortKey.descending("score"), SortKey.ascending("name").nullsFirst())));
+	}
+
+	/**
+	 * Nulls sort last by default in either direction.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_nullsLast() throws CompilationException {
+		final ComparatorGenerator g = new ComparatorGenerator(new RuntimeCompiler());
+		final Row x = new Row(0, 0, "x");
+		final Row y = new Row(0, 0, "y");
+		final Row none = new Row(0, 0, null);
+
+		final List<Row> rows = new ArrayList<>(Arrays.asList(none, x, y));
+		rows.sort(g.getComparator(Row.class, SortKey.descending("name")));
+		assertEquals(Arrays.asList(y, x, none), rows);
+	}
+
+	/**
+	 * Unknown and non-comparable properties are rejected.
+	 */
+	@Test
+	public void test_invalidKey() {
+		final ComparatorGenerator g = new ComparatorGenerator(new RuntimeCompiler());
+		for (final String property : new String[] { "missing", "tag", "name.missing" }) {
+			try {
+				g.getComparator(Row.class, SortKey.ascending(property));
+				fail(property);
+			} catch (final CompilationException e) {
+				// Expected
+			}
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Benchmarks of the compile pipeline itself, as opposed to the generated code.
+ * Excluded from the default build, run with
+ * {@code mvn test -Pbenchmark}.
+ *
+ * Results are written as JMH JSON to the file named by the
+ * jrungen.benchmark.output system property, default
+ * target/benchmarks/compile-pipeline.json. If jrungen.benchmark.baseline names
+ * an earlier result file the run fails when any benchmark regressed, see
+ * {@link BenchmarkComparison}.
+ */
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilePipelineBenchmark {
+
+	private static final int BATCH_SIZE = 32;
+	private static final AtomicLong IDS = new AtomicLong();
+
+	private static String uniqueSource(final String className) {
+		return "public class " + className + " implements java.util.function.IntUnaryOperator {\n" //
+				+ "  public int applyAsInt(int x) { return x * 31 + " + className.hashCode() + "; }\n" //
+				+ "}\n";
+	}
+
+	/**
+	 * Compiler shared by all benchmark threads.
+	 */
+	@State(Scope.Benchmark)
+	public static class CompilerState {
+		RuntimeCompiler compiler;
+
+		/**
+		 * Creates the compiler and compiles the source used by
+		 * {@link CompilePipelineBenchmark#compile_cached(CompilerState)}.
+		 *
+		 * @throws CompilationException e
+		 */
+		@Setup(Level.Trial)
+		public void setup() throws CompilationException {
+			compiler = new RuntimeCompiler();
+			compiler.compile("Cached", uniqueSource("Cached"));
+		}
+
+		String nextName(final String prefix) {
+			return prefix + IDS.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Metaspace growth reported alongside the compile rate.
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class MetaspaceCounters {
+		public double metaspaceBytesPer10kClasses;
+		private long startBytes;
+		private long classes;
+
+		/**
+		 * Resets the counters at the start of each iteration.
+		 */
+		@Setup(Level.Iteration)
+		public void reset() {
+			startBytes = metaspaceUsed();
+			classes = 0;
+			metaspaceBytesPer10kClasses = 0;
+		}
+
+		void compiled() {
+			++classes;
+			metaspaceBytesPer10kClasses = (metaspaceUsed() - startBytes) * 10_000.0 / classes;
+		}
+
+		private static long metaspaceUsed() {
+			long used = 0;
+			for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getName().equals("Metaspace")) {
+					used += pool.getUsage().getUsed();
+				}
+			}
+			return used;
+		}
+	}
+
+	/**
+	 * Latency of the first compile in a fresh JVM, including loading and
+	 * initializing javac.
+	 *
+	 * @return Compiled class.
+	 * @throws CompilationException e
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public Class<?> compile_coldStart() throws CompilationException {
+		return new RuntimeCompiler().compile("ColdStart", uniqueSource("ColdStart"));
+	}
+
+	/**
+	 * Latency of compiling new source once javac is warm.
+	 *
+	 * @param state
+	 * @return Compiled class.
+	 * @throws CompilationException e
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Class<?> compile_unique(final CompilerState state) throws CompilationException {
+		final String name = state.nextName("Unique");
+		return state.compiler.compile(name, uniqueSource(name));
+	}
+
+	/**
+	 * Latency of compiling source that is already in the cache.
+	 *
+	 * @param state
+	 * @return Compiled class.
+	 * @throws CompilationException e
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Class<?> compile_cached(final CompilerState state) throws CompilationException {
+		return state.compiler.compile("Cached", uniqueSource("Cached"));
+	}
+
+	/**
+	 * Throughput of compiling {@value #BATCH_SIZE} units with one javac
+	 * invocation.
+	 *
+	 * @param state
+	 * @return Compiled classes.
+	 * @throws CompilationException e
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Map<String, Class<?>> compileAll_batch(final CompilerState state) throws CompilationException {
+		final Map<String, String> sources = new LinkedHashMap<>();
+		for (int i = 0; i < BATCH_SIZE; ++i) {
+			final String name = state.nextName("Batch");
+			sources.put(name, uniqueSource(name));
+		}
+		return state.compiler.compileAll(sources);
+	}
+
+	/**
+	 * Throughput of compiling new source, with metaspace growth per 10k
+	 * classes.
+	 *
+	 * @param state
+	 * @param counters
+	 * @return Compiled class.
+	 * @throws CompilationException e
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Class<?> compile_metaspace(final CompilerState state, final MetaspaceCounters counters)
+			throws CompilationException {
+		final String name = state.nextName("Metaspace");
+		final Class<?> c = state.compiler.compile(name, uniqueSource(name));
+		counters.compiled();
+		return c;
+	}
+
+	/**
+	 * Throughput of compiling new source through the scheduler, with each
+	 * benchmark thread acting as a submitter.
+	 *
+	 * @param state
+	 * @return Compiled class.
+	 * @throws InterruptedException e
+	 * @throws ExecutionException   e
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Class<?> async_unique(final CompilerState state) throws InterruptedException, ExecutionException {
+		final String name = state.nextName("Async");
+		return state.compiler.compileAsync(name, uniqueSource(name)).get();
+	}
+
+	/**
+	 * Runs every benchmark, then the asynchronous benchmark at 1 to 32
+	 * submitting threads, and writes the combined results.
+	 *
+	 * @throws RunnerException e
+	 * @throws IOException     e
+	 */
+	@Test
+	public void runCompilePipelineBenchmarks() throws RunnerException, IOException {
+		final String prefix = CompilePipelineBenchmark.class.getName();
+		final List<RunResult> results = new ArrayList<>();
+
+		results.addAll(run(new OptionsBuilder().include(prefix + ".compile").threads(1)));
+		for (final int threads : new int[] { 1, 2, 4, 8, 16, 32 }) {
+			results.addAll(run(new OptionsBuilder().include(prefix + ".async_").threads(threads)));
+		}
+
+		final File output = new File(System.getProperty("jrungen.benchmark.output",
+				"target/benchmarks/compile-pipeline.json"));
+		output.getAbsoluteFile().getParentFile().mkdirs();
+		try (final PrintStream out = new PrintStream(output, "UTF-8")) {
+			ResultFormatFactory.getInstance(ResultFormatType.JSON, out).writeOut(results);
+		}
+
+		final String baseline = System.getProperty("jrungen.benchmark.baseline");
+		if (baseline != null) {
+			final double threshold = Double.parseDouble(System.getProperty("jrungen.benchmark.threshold", "10"));
+			final List<String> regressions = BenchmarkComparison.compare(
+					BenchmarkComparison.read(new File(baseline).toPath()),
+					BenchmarkComparison.read(output.toPath()), threshold);
+			assertTrue("Regressions against " + baseline + ":\n" + String.join("\n", regressions),
+					regressions.isEmpty());
+		}
+	}
+
+	private static Collection<RunResult> run(final ChainedOptionsBuilder builder) throws RunnerException {
+		// Iteration counts and forks come from the annotations.
+		final Options options = builder.addProfiler(GCProfiler.class).shouldFailOnError(true).shouldDoGC(true)
+				.build();
+		return new Runner(options).run();
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+import com.github.sdankbar.jrungen.helper.InvokeObject;
+
+/**
+ * Tests the CompilerMetrics class.
+ */
+public class CompilerMetricsTest {
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_compileMetrics() throws Exception {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		try (final CompilerMetrics metrics = new CompilerMetrics(c)) {
+			c.compile("MetricsUnit", "public class MetricsUnit {}");
+			c.compile("MetricsUnit", "public class MetricsUnit {}");
+			c.compileAsync("AsyncMetricsUnit", "public class AsyncMetricsUnit {}").get();
+			try {
+				c.compile("BadMetricsUnit", "public class BadMetricsUnit { int x = \"\"; }");
+				fail();
+			} catch (final CompilationException e) {
+				// Expected
+			}
+
+			assertEquals(2, metrics.getCompileCount());
+			assertEquals(1, metrics.getCompileFailureCount());
+			assertEquals(1, metrics.getCacheHitCount());
+			assertEquals(3, metrics.getCacheMissCount());
+			assertEquals(3, metrics.getJavacTime().getCount());
+			assertTrue(metrics.getJavacTime().getP99Millis() >= metrics.getJavacTime().getP50Millis());
+			assertTrue(metrics.getJavacTime().getMaxMillis() > 0);
+			assertEquals(2, metrics.getDefineTime().getCount());
+			assertEquals(1, metrics.getQueueWait().getCount());
+			assertEquals(2, metrics.getLiveClassCount());
+			assertEquals(1, metrics.getLiveLoaderCount());
+			assertTrue(metrics.getBytecodeBytes() > 0);
+
+			c.compileAndConstructInterface(Runnable.class, "");
+			assertEquals(1, metrics.getGenerateTime().getCount());
+
+			c.retireGeneration(c.getGeneration());
+			assertEquals(1, metrics.getRetiredGenerationCount());
+		}
+	}
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_mxBean() throws Exception {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName name;
+		try (final CompilerMetrics metrics = new CompilerMetrics(c)) {
+			name = metrics.register("test");
+			c.compile("MBeanUnit", "public class MBeanUnit {}");
+
+			assertEquals(1L, server.getAttribute(name, "CompileCount"));
+			final CompositeData javac = (CompositeData) server.getAttribute(name, "JavacTime");
+			assertEquals(1L, javac.get("count"));
+		}
+		assertFalse(server.isRegistered(name));
+	}
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_wrapperMetrics() throws Exception {
+		try (final CompilerMetrics metrics = new CompilerMetrics(ReflectionInvokeWrapper.getCompiler())) {
+			final Method m = InvokeObject.class.getMethod("prim2", int.class, int.class);
+			final ReflectionInvokeWrapper<InvokeObject, Integer> wrapper = new ReflectionInvokeWrapper<>(m, 2, 1000);
+			final InvokeObject t = new InvokeObject();
+			for (int i = 0; i < 5; ++i) {
+				assertEquals(Integer.valueOf(3), wrapper.invoke2(t, 1, 2));
+			}
+			wrapper.forceCompilation();
+
+			assertEquals(1, metrics.getWrapperCompileCount());
+			assertTrue(metrics.getWrapperReflectiveCallCount() >= 5);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import com.github.sdankbar.jrungen.CompilerScheduler.RejectionPolicy;
+
+/**
+ * Tests the CompilerScheduler class.
+ */
+public class CompilerSchedulerTest {
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_priorityAndRejection() throws Exception {
+		final CompilerScheduler scheduler = new CompilerScheduler(1, 3, RejectionPolicy.REJECT);
+		try {
+			final CountDownLatch started = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			final List<String> order = new CopyOnWriteArrayList<>();
+
+			scheduler.submit(() -> {
+				started.countDown();
+				release.await();
+				return null;
+			}, CompilePriority.LATENCY_CRITICAL);
+			started.await();
+
+			scheduler.submit(() -> order.add("background"), CompilePriority.BACKGROUND);
+			final Future<Boolean> last = scheduler.submit(() -> order.add("critical"),
+					CompilePriority.LATENCY_CRITICAL);
+			assertEquals(2, scheduler.getQueueDepth());
+
+			boolean rejected = false;
+			try {
+				scheduler.submit(() -> null, CompilePriority.LATENCY_CRITICAL);
+			} catch (final RejectedExecutionException e) {
+				rejected = true;
+			}
+			assertTrue(rejected);
+
+			release.countDown();
+			last.get();
+			while (order.size() < 2) {
+				Thread.sleep(1);
+			}
+			assertEquals(Arrays.asList("critical", "background"), order);
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_callerRuns() throws Exception {
+		final CompilerScheduler scheduler = new CompilerScheduler(1, 1, RejectionPolicy.CALLER_RUNS);
+		try {
+			final CountDownLatch release = new CountDownLatch(1);
+			scheduler.submit(() -> {
+				release.await();
+				return null;
+			}, CompilePriority.LATENCY_CRITICAL);
+
+			final Thread caller = Thread.currentThread();
+			assertEquals(caller, scheduler.submit(Thread::currentThread, CompilePriority.BACKGROUND).get());
+			release.countDown();
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.Test;
+
+/**
+ * Tests the ExpressionCompiler class.
+ */
+public class ExpressionCompilerTest {
+
+	/**
+	 * Line item with a nested customer.
+	 */
+	public static class Order {
+		public double price;
+		public int quantity;
+		private Customer customer;
+
+		public Customer getCustomer() {
+			return customer;
+		}
+	}
+
+	/**
+	 * Customer referenced by an order.
+	 */
+	public static class Customer {
+		public String name;
+		public boolean active;
+	}
+
+	private static Order order(final double price, final int quantity, final String name, final boolean active) {
+		final Order o = new Order();
+		o.price = price;
+		o.quantity = quantity;
+		o.customer = new Customer();
+		o.customer.name = name;
+		o.customer.active = active;
+		return o;
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_predicate() throws CompilationException {
+		final ExpressionCompiler c = new ExpressionCompiler(new RuntimeCompiler());
+		final Predicate<Order> p = c.compilePredicate(Order.class,
+				"price * quantity > 100 && customer.active && customer.name != null");
+
+		assertTrue(p.test(order(60, 2, "Ann", true)));
+		assertFalse(p.test(order(40, 2, "Ann", true)));
+		assertFalse(p.test(order(60, 2, "Ann", false)));
+		assertFalse(p.test(order(60, 2, null, true)));
+
+		final Predicate<Order> names = c.compilePredicate(Order.class,
+				"startsWith(customer.name, \"A\") || customer.name == \"Bob\"");
+		assertTrue(names.test(order(1, 1, "Ann", true)));
+		assertTrue(names.test(order(1, 1, "Bob", true)));
+		assertFalse(names.test(order(1, 1, "Cal", true)));
+	}
+
+	/**
+	 * Control characters in string literals survive into the generated source.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_controlCharacters() throws CompilationException {
+		final ExpressionCompiler c = new ExpressionCompiler(new RuntimeCompiler());
+		final Predicate<Order> p = c.compilePredicate(Order.class, "customer.name == \"a\nb\r\tc\u0001\u00e9\"");
+		assertTrue(p.test(order(1, 1, "a\nb\r\tc\u0001\u00e9", true)));
+		assertFalse(p.test(order(1, 1, "a b", true)));
+	}
+
+	/**
+	 * Expressions that only differ in whitespace or redundant parentheses share
+	 * a compiled instance.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_normalizedCache() throws CompilationException {
+		final ExpressionCompiler c = new ExpressionCompiler(new RuntimeCompiler());
+		final Predicate<Order> a = c.compilePredicate(Order.class, "price>1&&quantity<=2");
+		final Predicate<Order> b = c.compilePredicate(Order.class, "  ((price > 1)) && (quantity <= 2) ");
+		assertSame(a, b);
+		assertEquals(c.normalize("price>1&&quantity<=2"), c.normalize("(price > 1) && quantity <= 2"));
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_toDouble() throws CompilationException {
+		final ExpressionCompiler c = new ExpressionCompiler(new RuntimeCompiler());
+		final ToDoubleFunction<Order> f = c.compileToDouble(Order.class,
+				"max(price - 1, 0) * -quantity + sqrt(16) + length(customer.name) % 2");
+		assertEquals(-9 * 2 + 4 + 1, f.applyAsDouble(order(10, 2, "Ann", true)), 0.0);
+	}
+
+	/**
+	 * Malformed and mistyped expressions are rejected.
+	 */
+	@Test
+	public void test_errors() {
+		final ExpressionCompiler c = new ExpressionCompiler(new RuntimeCompiler());
+		final String[] invalid = { "price >", "price > 1 &&", "unknown > 1", "price + 1", "price && true",
+				"system(price)", "customer.name > 1", "1e > 0", "price > 2E+", "1e999 > 0",
+				"price > 1.2.3", "price > \u0661", "\u0661 > price" };
+		for (final String expression : invalid) {
+			try {
+				c.compilePredicate(Order.class, expression);
+				fail(expression);
+			} catch (final CompilationException e) {
+				// Expected
+			}
+		}
+	}
+}
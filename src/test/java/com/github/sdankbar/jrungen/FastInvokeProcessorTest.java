@@ -0,0 +1,189 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.github.sdankbar.jrungen.Invokers.Invoker2;
+
+/**
+ * Tests the FastInvokeProcessor class. The processor runs on this source set
+ * when the tests are compiled.
+ */
+public class FastInvokeProcessorTest {
+
+	/**
+	 * Class with callers generated at build time.
+	 */
+	public static class Calculator {
+		@FastInvoke
+		public int add(final int a, final int b) {
+			return a + b;
+		}
+
+		@FastInvoke
+		public static String join(final String[] parts, final char separator) {
+			return String.join(String.valueOf(separator), parts);
+		}
+
+		@FastInvoke
+		void check(final int value) throws IOException {
+			if (value < 0) {
+				throw new IOException("negative");
+			}
+		}
+
+		@FastInvoke
+		long sum(final int a, final int b, final int c, final int d, final int e, final int f, final long g) {
+			return a + b + c + d + e + f + g;
+		}
+
+		public int subtract(final int a, final int b) {
+			return a - b;
+		}
+	}
+
+	/**
+	 * @throws NoSuchMethodException e
+	 * @throws CompilationException  e
+	 */
+	@Test
+	public void test_precompiledCallers() throws NoSuchMethodException, CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		final List<Collection<String>> compiled = new ArrayList<>();
+		c.addListener(new CompilerListener() {
+			@Override
+			public void compiled(final Collection<String> classNames) {
+				compiled.add(classNames);
+			}
+		});
+
+		final BiFunction<Calculator, Object[], Integer> add = c
+				.compileMethodCaller(Calculator.class.getMethod("add", int.class, int.class));
+		assertEquals(Integer.valueOf(5), add.apply(new Calculator(), new Object[] { 2, 3 }));
+		assertTrue(add.getClass().getName().contains(PrecompiledCallers.SUFFIX));
+
+		final BiFunction<Object, Object[], String> join = c.compileMethodCaller(
+				Calculator.class.getMethod("join", String[].class, char.class), CallerBackend.METHOD_HANDLE);
+		assertEquals("a-b", join.apply(null, new Object[] { new String[] { "a", "b" }, '-' }));
+
+		final BiFunction<Calculator, Object[], Void> check = c
+				.compileMethodCaller(Calculator.class.getDeclaredMethod("check", int.class));
+		assertNull(check.apply(new Calculator(), new Object[] { 1 }));
+		try {
+			check.apply(new Calculator(), new Object[] { -1 });
+			fail();
+		} catch (final InvokationException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+
+		final BiFunction<Calculator, Object[], Long> sum = c.compileMethodCaller(Calculator.class
+				.getDeclaredMethod("sum", int.class, int.class, int.class, int.class, int.class, int.class, long.class));
+		assertEquals(Long.valueOf(28), sum.apply(new Calculator(), new Object[] { 1, 2, 3, 4, 5, 6, 7L }));
+
+		final Invoker2<Calculator, Integer> typed = c.compileMethodCaller(
+				Calculator.class.getMethod("add", int.class, int.class), Invoker2.class, Calculator.class,
+				Integer.class);
+		assertEquals(Integer.valueOf(7), typed.invoke(new Calculator(), 3, 4));
+		assertTrue(compiled.isEmpty());
+
+		// Methods without the annotation are still compiled at runtime.
+		c.compileMethodCaller(Calculator.class.getMethod("subtract", int.class, int.class));
+		assertEquals(1, compiled.size());
+	}
+
+	/**
+	 * Nested and top level classes whose names only differ in '$' and '_' get
+	 * different caller names.
+	 */
+	@Test
+	public void test_classNameIncludesDeclaringClass() {
+		assertNotEquals(PrecompiledCallers.className("p.Outer$Inner", "run", Collections.emptyList()),
+				PrecompiledCallers.className("p.Outer_Inner", "run", Collections.emptyList()));
+	}
+
+	/**
+	 * @throws NoSuchMethodException e
+	 */
+	@Test
+	public void test_wrapperStartsCompiled() throws NoSuchMethodException {
+		final ReflectionInvokeWrapper<Calculator, Integer> add = new ReflectionInvokeWrapper<>(
+				Calculator.class.getMethod("add", int.class, int.class));
+		assertTrue(add.isCompiled());
+		assertEquals(Integer.valueOf(9), add.invoke2(new Calculator(), 4, 5));
+		assertEquals(Integer.valueOf(9), add.invoke(new Calculator(), new Object[] { 4, 5 }));
+
+		final ReflectionInvokeWrapper<Calculator, Integer> subtract = new ReflectionInvokeWrapper<>(
+				Calculator.class.getMethod("subtract", int.class, int.class));
+		assertFalse(subtract.isCompiled());
+	}
+
+	/**
+	 * Private methods cannot be called by generated code and are rejected.
+	 *
+	 * @throws URISyntaxException e
+	 */
+	@Test
+	public void test_privateMethodRejected() throws URISyntaxException {
+		final String source = "public class PrivateTarget {\n"
+				+ "@com.github.sdankbar.jrungen.FastInvoke private void run() {}\n" + "}\n";
+		final String classPath = new File(FastInvoke.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+				.getPath();
+
+		final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		final JavaCompiler.CompilationTask task = javac.getTask(null, null, diagnostics,
+				Arrays.asList("-proc:only", "-classpath", classPath), null,
+				Collections.singletonList(new InMemorySourceFile("PrivateTarget", source)));
+		task.setProcessors(Collections.singletonList(new FastInvokeProcessor()));
+
+		assertFalse(task.call());
+		final Diagnostic<? extends JavaFileObject> error = diagnostics.getDiagnostics().get(0);
+		assertEquals(Diagnostic.Kind.ERROR, error.getKind());
+		assertTrue(error.getMessage(null).contains("must not be private"));
+	}
+}
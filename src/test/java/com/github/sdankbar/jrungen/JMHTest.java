@@ -22,27 +22,44 @@
  */
 package com.github.sdankbar.jrungen;
 
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.openjdk.jmh.runner.options.TimeValue;
 
+import com.github.sdankbar.jrungen.Invokers.Invoker0;
+import com.github.sdankbar.jrungen.Invokers.Invoker1;
+import com.github.sdankbar.jrungen.Invokers.Invoker2;
+import com.github.sdankbar.jrungen.Invokers.Invoker3;
+import com.github.sdankbar.jrungen.Invokers.Invoker4;
+import com.github.sdankbar.jrungen.Invokers.Invoker5;
+import com.github.sdankbar.jrungen.Invokers.Invoker6;
 import com.github.sdankbar.jrungen.helper.InvokeObject;
 
 /**
@@ -106,13 +123,130 @@ public class JMHTest {
 		}
 	}
 
+	/**
+	 * State shared by all benchmark threads.
+	 */
+	@State(Scope.Benchmark)
+	public static class SharedState {
+		ReflectionInvokeWrapper<InvokeObject, Integer> wrapper;
+
+		/**
+		 * Sets up shared state.
+		 *
+		 * @throws SecurityException
+		 * @throws NoSuchMethodException
+		 */
+		@Setup(Level.Trial)
+		public void setup() throws NoSuchMethodException, SecurityException {
+			wrapper = new ReflectionInvokeWrapper<>(InvokeObject.class.getMethod("call2", int.class, int.class));
+			wrapper.forceCompilation();
+		}
+	}
+
+	/**
+	 * Callers of one method for each invocation path, shared by all benchmark
+	 * threads. The method has arity parameters of type argType.
+	 */
+	@State(Scope.Benchmark)
+	public static class MatrixState {
+		@Param({ "0", "1", "2", "3", "4", "5", "6" })
+		public int arity;
+		@Param({ "int", "Integer" })
+		public String argType;
+
+		InvokeObject obj = new InvokeObject();
+		boolean primitive;
+		// Not final so the JIT cannot constant fold the arguments.
+		int a = 1, b = 2, c = 3, d = 4, e = 5, f = 6;
+		Integer ia = 1, ib = 2, ic = 3, id = 4, ie = 5, ig = 6;
+		Object[] args;
+
+		Method method;
+		MethodHandle handle;
+		BiFunction<InvokeObject, Object[], Object> generated;
+		Object invoker;
+		ReflectionInvokeWrapper<InvokeObject, Object> wrapper;
+
+		/**
+		 * Creates the callers.
+		 *
+		 * @throws Exception e
+		 */
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			primitive = argType.equals("int");
+			final Class<?>[] types = new Class<?>[arity];
+			Arrays.fill(types, primitive ? int.class : Integer.class);
+			method = InvokeObject.class.getMethod((primitive ? "prim" : "ref") + arity, types);
+			handle = MethodHandles.lookup().unreflect(method);
+			args = Arrays.copyOf(new Object[] { 1, 2, 3, 4, 5, 6 }, arity);
+
+			final RuntimeCompiler compiler = new RuntimeCompiler();
+			generated = compiler.compileMethodCaller(method);
+			invoker = compiler.compileMethodCaller(method, Invokers.forArity(arity), InvokeObject.class,
+					Integer.class);
+			wrapper = new ReflectionInvokeWrapper<>(method);
+			wrapper.forceCompilation();
+		}
+	}
+
+	/**
+	 * Eight calls through one call site to generated Functions of 1, 2 or 8
+	 * distinct classes, from monomorphic to megamorphic.
+	 */
+	@State(Scope.Benchmark)
+	public static class CallSiteState {
+		@Param({ "1", "2", "8" })
+		public int classes;
+
+		InvokeObject obj = new InvokeObject();
+		List<Function<InvokeObject, Integer>> funcs = new ArrayList<>();
+
+		/**
+		 * Compiles the Functions.
+		 *
+		 * @throws CompilationException e
+		 */
+		@Setup(Level.Trial)
+		public void setup() throws CompilationException {
+			final RuntimeCompiler compiler = new RuntimeCompiler();
+			final List<Function<InvokeObject, Integer>> distinct = new ArrayList<>();
+			for (int k = 0; k < classes; ++k) {
+				distinct.add(compiler.compileAndConstructFunctionalInterface(InvokeObject.class, Integer.class,
+						"return arg.prim1(" + k + ");"));
+			}
+			for (int k = 0; k < 8; ++k) {
+				funcs.add(distinct.get(k % classes));
+			}
+		}
+	}
+
+	/**
+	 * @param shared
+	 * @param state
+	 * @return Result of the call.
+	 */
+	@Benchmark
+	public Integer concurrent_sharedWrapper(final SharedState shared, final BenchmarkState state) {
+		return shared.wrapper.invoke2(state.obj, 1, 2);
+	}
+
+	/**
+	 * @param state
+	 * @return Result of the call.
+	 */
+	@Benchmark
+	public int concurrent_native(final BenchmarkState state) {
+		return state.obj.call2(1, 2);
+	}
+
 	/**
 	 * @param state
 	 * @param bh
 	 */
 	@Benchmark
 	public void benchmark_generatedCode(final BenchmarkState state, final Blackhole bh) {
-		state.func.apply(state.obj);
+		bh.consume(state.func.apply(state.obj));
 	}
 
 	/**
@@ -122,7 +256,7 @@ public class JMHTest {
 	@Benchmark
 	public void benchmark_generatedCode2(final BenchmarkState state, final Blackhole bh) {
 		final Integer[] argArray = { 1, 2 };
-		state.func2.apply(state.obj, argArray);
+		bh.consume(state.func2.apply(state.obj, argArray));
 	}
 
 	/**
@@ -132,7 +266,7 @@ public class JMHTest {
 	@Benchmark
 	public void benchmark_generatedCode3(final BenchmarkState state, final Blackhole bh) {
 		final Object[] array = {};
-		state.func3.apply(state.obj, array);
+		bh.consume(state.func3.apply(state.obj, array));
 	}
 
 	/**
@@ -142,7 +276,7 @@ public class JMHTest {
 	@Benchmark
 	public void benchmark_reflectWrapper(final BenchmarkState state, final Blackhole bh) {
 		final Object[] array = {};
-		state.wrapper.invoke(state.obj, array);
+		bh.consume(state.wrapper.invoke(state.obj, array));
 	}
 
 	/**
@@ -151,7 +285,7 @@ public class JMHTest {
 	 */
 	@Benchmark
 	public void benchmark_native(final BenchmarkState state, final Blackhole bh) {
-		state.obj.call();
+		bh.consume(state.obj.call());
 	}
 
 	/**
@@ -161,7 +295,7 @@ public class JMHTest {
 	@Benchmark
 	public void benchmark_reflect(final BenchmarkState state, final Blackhole bh) {
 		try {
-			state.reflectMethod.invoke(state.obj);
+			bh.consume(state.reflectMethod.invoke(state.obj));
 		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
 			e.printStackTrace();
 		}
@@ -174,7 +308,7 @@ public class JMHTest {
 	@Benchmark
 	public void benchmark_reflect2(final BenchmarkState state, final Blackhole bh) {
 		try {
-			state.reflectMethod2.invoke(state.obj, 1, 2);
+			bh.consume(state.reflectMethod2.invoke(state.obj, 1, 2));
 		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
 			e.printStackTrace();
 		}
@@ -188,16 +322,291 @@ public class JMHTest {
 		++state.i;
 	}
 
+	/**
+	 * Calls the method directly. The switch on arity is shared with the other
+	 * fixed arity paths.
+	 *
+	 * @param s
+	 * @param bh
+	 */
+	@Benchmark
+	public void matrix_direct(final MatrixState s, final Blackhole bh) {
+		final InvokeObject o = s.obj;
+		if (s.primitive) {
+			switch (s.arity) {
+			case 0:
+				bh.consume(o.prim0());
+				break;
+			case 1:
+				bh.consume(o.prim1(s.a));
+				break;
+			case 2:
+				bh.consume(o.prim2(s.a, s.b));
+				break;
+			case 3:
+				bh.consume(o.prim3(s.a, s.b, s.c));
+				break;
+			case 4:
+				bh.consume(o.prim4(s.a, s.b, s.c, s.d));
+				break;
+			case 5:
+				bh.consume(o.prim5(s.a, s.b, s.c, s.d, s.e));
+				break;
+			default:
+				bh.consume(o.prim6(s.a, s.b, s.c, s.d, s.e, s.f));
+				break;
+			}
+		} else {
+			switch (s.arity) {
+			case 0:
+				bh.consume(o.ref0());
+				break;
+			case 1:
+				bh.consume(o.ref1(s.ia));
+				break;
+			case 2:
+				bh.consume(o.ref2(s.ia, s.ib));
+				break;
+			case 3:
+				bh.consume(o.ref3(s.ia, s.ib, s.ic));
+				break;
+			case 4:
+				bh.consume(o.ref4(s.ia, s.ib, s.ic, s.id));
+				break;
+			case 5:
+				bh.consume(o.ref5(s.ia, s.ib, s.ic, s.id, s.ie));
+				break;
+			default:
+				bh.consume(o.ref6(s.ia, s.ib, s.ic, s.id, s.ie, s.ig));
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Calls the method through an exactly typed MethodHandle.
+	 *
+	 * @param s
+	 * @param bh
+	 * @throws Throwable e
+	 */
+	@Benchmark
+	public void matrix_methodHandle(final MatrixState s, final Blackhole bh) throws Throwable {
+		final InvokeObject o = s.obj;
+		final MethodHandle h = s.handle;
+		if (s.primitive) {
+			switch (s.arity) {
+			case 0:
+				bh.consume((int) h.invokeExact(o));
+				break;
+			case 1:
+				bh.consume((int) h.invokeExact(o, s.a));
+				break;
+			case 2:
+				bh.consume((int) h.invokeExact(o, s.a, s.b));
+				break;
+			case 3:
+				bh.consume((int) h.invokeExact(o, s.a, s.b, s.c));
+				break;
+			case 4:
+				bh.consume((int) h.invokeExact(o, s.a, s.b, s.c, s.d));
+				break;
+			case 5:
+				bh.consume((int) h.invokeExact(o, s.a, s.b, s.c, s.d, s.e));
+				break;
+			default:
+				bh.consume((int) h.invokeExact(o, s.a, s.b, s.c, s.d, s.e, s.f));
+				break;
+			}
+		} else {
+			switch (s.arity) {
+			case 0:
+				bh.consume((Integer) h.invokeExact(o));
+				break;
+			case 1:
+				bh.consume((Integer) h.invokeExact(o, s.ia));
+				break;
+			case 2:
+				bh.consume((Integer) h.invokeExact(o, s.ia, s.ib));
+				break;
+			case 3:
+				bh.consume((Integer) h.invokeExact(o, s.ia, s.ib, s.ic));
+				break;
+			case 4:
+				bh.consume((Integer) h.invokeExact(o, s.ia, s.ib, s.ic, s.id));
+				break;
+			case 5:
+				bh.consume((Integer) h.invokeExact(o, s.ia, s.ib, s.ic, s.id, s.ie));
+				break;
+			default:
+				bh.consume((Integer) h.invokeExact(o, s.ia, s.ib, s.ic, s.id, s.ie, s.ig));
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @param s
+	 * @param bh
+	 * @throws Exception e
+	 */
+	@Benchmark
+	public void matrix_reflect(final MatrixState s, final Blackhole bh) throws Exception {
+		bh.consume(s.method.invoke(s.obj, s.args));
+	}
+
+	/**
+	 * Calls the generated BiFunction from
+	 * {@link RuntimeCompiler#compileMethodCaller(Method)}.
+	 *
+	 * @param s
+	 * @param bh
+	 */
+	@Benchmark
+	public void matrix_generatedArray(final MatrixState s, final Blackhole bh) {
+		bh.consume(s.generated.apply(s.obj, s.args));
+	}
+
+	/**
+	 * Calls the generated fixed arity invoker.
+	 *
+	 * @param s
+	 * @param bh
+	 */
+	@SuppressWarnings("unchecked")
+	@Benchmark
+	public void matrix_generatedInvoker(final MatrixState s, final Blackhole bh) {
+		final InvokeObject o = s.obj;
+		switch (s.arity) {
+		case 0:
+			bh.consume(((Invoker0<InvokeObject, Integer>) s.invoker).invoke(o));
+			break;
+		case 1:
+			bh.consume(((Invoker1<InvokeObject, Integer>) s.invoker).invoke(o, s.ia));
+			break;
+		case 2:
+			bh.consume(((Invoker2<InvokeObject, Integer>) s.invoker).invoke(o, s.ia, s.ib));
+			break;
+		case 3:
+			bh.consume(((Invoker3<InvokeObject, Integer>) s.invoker).invoke(o, s.ia, s.ib, s.ic));
+			break;
+		case 4:
+			bh.consume(((Invoker4<InvokeObject, Integer>) s.invoker).invoke(o, s.ia, s.ib, s.ic, s.id));
+			break;
+		case 5:
+			bh.consume(((Invoker5<InvokeObject, Integer>) s.invoker).invoke(o, s.ia, s.ib, s.ic, s.id, s.ie));
+			break;
+		default:
+			bh.consume(((Invoker6<InvokeObject, Integer>) s.invoker).invoke(o, s.ia, s.ib, s.ic, s.id, s.ie, s.ig));
+			break;
+		}
+	}
+
+	/**
+	 * @param s
+	 * @param bh
+	 */
+	@Benchmark
+	public void matrix_wrapperArray(final MatrixState s, final Blackhole bh) {
+		bh.consume(s.wrapper.invoke(s.obj, s.args));
+	}
+
+	/**
+	 * @param s
+	 * @param bh
+	 */
+	@Benchmark
+	public void matrix_wrapperFixed(final MatrixState s, final Blackhole bh) {
+		final InvokeObject o = s.obj;
+		switch (s.arity) {
+		case 0:
+			bh.consume(s.wrapper.invoke0(o));
+			break;
+		case 1:
+			bh.consume(s.wrapper.invoke1(o, s.ia));
+			break;
+		case 2:
+			bh.consume(s.wrapper.invoke2(o, s.ia, s.ib));
+			break;
+		case 3:
+			bh.consume(s.wrapper.invoke3(o, s.ia, s.ib, s.ic));
+			break;
+		case 4:
+			bh.consume(s.wrapper.invoke4(o, s.ia, s.ib, s.ic, s.id));
+			break;
+		case 5:
+			bh.consume(s.wrapper.invoke5(o, s.ia, s.ib, s.ic, s.id, s.ie));
+			break;
+		default:
+			bh.consume(s.wrapper.invoke6(o, s.ia, s.ib, s.ic, s.id, s.ie, s.ig));
+			break;
+		}
+	}
+
+	/**
+	 * @param s
+	 * @param bh
+	 */
+	@Benchmark
+	@OperationsPerInvocation(8)
+	public void matrix_callSite(final CallSiteState s, final Blackhole bh) {
+		for (final Function<InvokeObject, Integer> func : s.funcs) {
+			bh.consume(func.apply(s.obj));
+		}
+	}
+
 	/**
 	 * @throws RunnerException
 	 */
 	@Test
 	public void runBenchmarks() throws RunnerException {
-		final Options options = new OptionsBuilder().include(JMHTest.class.getName() + ".*").mode(Mode.Throughput)
+		final Options options = new OptionsBuilder().include(JMHTest.class.getName() + ".benchmark_.*").mode(Mode.Throughput)
 				.timeUnit(TimeUnit.MICROSECONDS).warmupTime(TimeValue.seconds(1)).warmupIterations(5).threads(1)
 				.measurementIterations(5).forks(1).shouldFailOnError(false).shouldDoGC(true).build();
 
 		new Runner(options).run();
 	}
 
+	/**
+	 * Compares a wrapper shared between threads against a direct call. Only runs
+	 * when the jrungen.concurrentBenchmarks system property is true.
+	 *
+	 * @throws RunnerException
+	 */
+	@Test
+	public void runConcurrentBenchmarks() throws RunnerException {
+		Assume.assumeTrue(Boolean.getBoolean("jrungen.concurrentBenchmarks"));
+		for (final int threads : new int[] { 8, 16, 32 }) {
+			final Options options = new OptionsBuilder().include(JMHTest.class.getName() + ".concurrent_.*")
+					.mode(Mode.Throughput).timeUnit(TimeUnit.MICROSECONDS).warmupTime(TimeValue.seconds(1))
+					.warmupIterations(5).threads(threads).measurementIterations(5).forks(1).shouldFailOnError(false)
+					.shouldDoGC(true).build();
+
+			new Runner(options).run();
+		}
+	}
+
+	/**
+	 * Runs the invocation matrix at 1, 4 and 16 threads and writes JSON results
+	 * to target/benchmarks. Only runs when the jrungen.invocationMatrix system
+	 * property is true.
+	 *
+	 * @throws RunnerException
+	 */
+	@Test
+	public void runInvocationMatrix() throws RunnerException {
+		Assume.assumeTrue(Boolean.getBoolean("jrungen.invocationMatrix"));
+		new File("target/benchmarks").mkdirs();
+		for (final int threads : new int[] { 1, 4, 16 }) {
+			final Options options = new OptionsBuilder().include(JMHTest.class.getName() + ".matrix_.*")
+					.mode(Mode.AverageTime).timeUnit(TimeUnit.NANOSECONDS).warmupTime(TimeValue.seconds(1))
+					.warmupIterations(3).measurementTime(TimeValue.seconds(1)).measurementIterations(3)
+					.threads(threads).forks(1).shouldFailOnError(true).shouldDoGC(true)
+					.resultFormat(ResultFormatType.JSON)
+					.result("target/benchmarks/invocation-matrix-" + threads + "threads.json").build();
+
+			new Runner(options).run();
+		}
+	}
+
 }
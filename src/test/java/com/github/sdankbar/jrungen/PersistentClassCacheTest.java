@@ -0,0 +1,98 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the PersistentClassCache class.
+ */
+public class PersistentClassCacheTest {
+
+	/**
+	 * Temporary cache directory.
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * @throws IOException          e
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_reloadFromDisk() throws IOException, CompilationException {
+		final PersistentClassCache disk1 = new PersistentClassCache(folder.getRoot().toPath());
+		final Function<Integer, Integer> f1 = new RuntimeCompiler(16, disk1)
+				.compileAndConstructFunctionalInterface(Integer.class, Integer.class, "return arg * 3;");
+		assertEquals(0, disk1.getHitCount());
+		assertEquals(1, disk1.getMissCount());
+
+		final PersistentClassCache disk2 = new PersistentClassCache(folder.getRoot().toPath());
+		final Function<Integer, Integer> f2 = new RuntimeCompiler(16, disk2)
+				.compileAndConstructFunctionalInterface(Integer.class, Integer.class, "return arg * 3;");
+		assertEquals(1, disk2.getHitCount());
+		assertEquals(0, disk2.getMissCount());
+
+		assertNotSame(f1.getClass(), f2.getClass());
+		assertEquals(f1.getClass().getName(), f2.getClass().getName());
+		assertEquals(Integer.valueOf(9), f2.apply(3));
+	}
+
+	/**
+	 * @throws IOException          e
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_corruptEntry() throws IOException, CompilationException {
+		final PersistentClassCache disk = new PersistentClassCache(folder.getRoot().toPath());
+		new RuntimeCompiler(16, disk).compile("Corrupt", "public class Corrupt {}");
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(disk.getDirectory())) {
+			for (final Path p : stream) {
+				final byte[] bytes = Files.readAllBytes(p);
+				bytes[bytes.length / 2] ^= 0x7F;
+				Files.write(p, bytes);
+			}
+		}
+
+		final Class<?> c = new RuntimeCompiler(16, disk).compile("Corrupt", "public class Corrupt {}");
+		assertEquals("Corrupt", c.getName());
+		assertEquals(0, disk.getHitCount());
+		assertEquals(2, disk.getMissCount());
+
+		final PersistentClassCache reopened = new PersistentClassCache(folder.getRoot().toPath());
+		new RuntimeCompiler(16, reopened).compile("Corrupt", "public class Corrupt {}");
+		assertEquals(1, reopened.getHitCount());
+	}
+}
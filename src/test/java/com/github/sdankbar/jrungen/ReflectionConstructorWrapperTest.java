@@ -0,0 +1,94 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+
+import org.junit.Test;
+
+/**
+ * Tests the ReflectionConstructorWrapper class.
+ */
+public class ReflectionConstructorWrapperTest {
+
+	/**
+	 * Class with several constructors.
+	 */
+	public static class Point {
+		public final int x;
+		public final int y;
+
+		public Point() {
+			this(0, 0);
+		}
+
+		public Point(final int x, final int y) {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 */
+	@Test
+	public void test_tieredConstruct() throws NoSuchMethodException, SecurityException {
+		final Constructor<Point> c = Point.class.getConstructor(int.class, int.class);
+		final ReflectionConstructorWrapper<Point> w = new ReflectionConstructorWrapper<>(c, 2, 4);
+
+		for (int i = 0; i < 10; ++i) {
+			final Point p = w.newInstance2(i, 2);
+			assertEquals(i, p.x);
+			assertEquals(2, p.y);
+		}
+		w.forceCompilation();
+		assertTrue(w.isCompiled());
+		assertEquals(5, w.newInstance(new Object[] { 5, 6 }).x);
+		assertEquals(6, w.newInstance2(5, 6).y);
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 */
+	@Test
+	public void test_noArgs() throws NoSuchMethodException, SecurityException {
+		final ReflectionConstructorWrapper<Point> w = new ReflectionConstructorWrapper<>(Point.class.getConstructor(),
+				0, 0);
+		w.forceCompilation();
+		assertEquals(0, w.newInstance0().x);
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 */
+	@Test(expected = InvokationException.class)
+	public void test_wrongArity() throws NoSuchMethodException, SecurityException {
+		new ReflectionConstructorWrapper<>(Point.class.getConstructor()).newInstance1(1);
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.sdankbar.jrungen.helper.InvokeObject;
+
+/**
+ * Tests the ReflectionFieldWrapper class.
+ */
+public class ReflectionFieldWrapperTest {
+
+	/**
+	 * Object with fields of several types.
+	 */
+	public static class Fields {
+		public long count = 5;
+		public String name = "a";
+		public final double ratio = 0.5;
+	}
+
+	/**
+	 * @throws SecurityException    e
+	 * @throws NoSuchFieldException e
+	 */
+	@Test
+	public void test_intField() throws NoSuchFieldException, SecurityException {
+		final ReflectionFieldWrapper<InvokeObject, Integer> w = new ReflectionFieldWrapper<>(
+				InvokeObject.class.getField("i"));
+
+		final InvokeObject t = new InvokeObject();
+		w.setInt(t, 4);
+		assertEquals(4, w.getInt(t));
+		w.forceCompilation();
+		assertTrue(w.isCompiled());
+		w.setInt(t, 7);
+		assertEquals(7, t.i);
+		w.set(t, 8);
+		assertEquals(Integer.valueOf(8), w.get(t));
+	}
+
+	/**
+	 * @throws SecurityException    e
+	 * @throws NoSuchFieldException e
+	 */
+	@Test
+	public void test_fieldTypes() throws NoSuchFieldException, SecurityException {
+		final ReflectionFieldWrapper<Fields, Long> count = new ReflectionFieldWrapper<>(
+				Fields.class.getField("count"), 0);
+		final ReflectionFieldWrapper<Fields, String> name = new ReflectionFieldWrapper<>(
+				Fields.class.getField("name"), 0);
+		final ReflectionFieldWrapper<Fields, Double> ratio = new ReflectionFieldWrapper<>(
+				Fields.class.getField("ratio"), 0);
+		count.forceCompilation();
+		name.forceCompilation();
+		ratio.forceCompilation();
+
+		final Fields f = new Fields();
+		count.setLong(f, count.getLong(f) + 1);
+		assertEquals(6, f.count);
+		name.set(f, name.get(f) + "b");
+		assertEquals("ab", f.name);
+		assertEquals(0.5, ratio.getDouble(f), 0);
+	}
+
+	/**
+	 * @throws SecurityException    e
+	 * @throws NoSuchFieldException e
+	 */
+	@Test(expected = InvokationException.class)
+	public void test_finalField() throws NoSuchFieldException, SecurityException {
+		final ReflectionFieldWrapper<Fields, Double> ratio = new ReflectionFieldWrapper<>(
+				Fields.class.getField("ratio"), 0);
+		ratio.forceCompilation();
+		ratio.setDouble(new Fields(), 1.0);
+	}
+
+	/**
+	 * @throws SecurityException    e
+	 * @throws NoSuchFieldException e
+	 */
+	@Test(expected = InvokationException.class)
+	public void test_wrongType() throws NoSuchFieldException, SecurityException {
+		new ReflectionFieldWrapper<Fields, String>(Fields.class.getField("name")).getInt(new Fields());
+	}
+}
@@ -23,8 +23,14 @@
 package com.github.sdankbar.jrungen;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -57,4 +63,88 @@ public class ReflectionInvokeWrapperTest {
 			assertEquals(2, t.i);
 		}
 	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 */
+	@Test
+	public void test_arityInvoke() throws NoSuchMethodException, SecurityException {
+		final Method m = InvokeObject.class.getMethod("call2", int.class, int.class);
+		final ReflectionInvokeWrapper<InvokeObject, Integer> c = new ReflectionInvokeWrapper<>(m);
+
+		final InvokeObject t = new InvokeObject();
+		assertEquals(Integer.valueOf(3), c.invoke2(t, 1, 2));
+		c.forceCompilation();
+		assertEquals(Integer.valueOf(6), c.invoke2(t, 1, 2));
+		assertEquals(Integer.valueOf(9), c.invoke(t, new Object[] { 1, 2 }));
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 * @throws InterruptedException  e
+	 */
+	@Test
+	public void test_tieredInvoke() throws NoSuchMethodException, SecurityException, InterruptedException {
+		final Method m = InvokeObject.class.getMethod("call2", int.class, int.class);
+		final ReflectionInvokeWrapper<InvokeObject, Integer> c = new ReflectionInvokeWrapper<>(m, 2, 4);
+
+		final InvokeObject t = new InvokeObject();
+		int expected = 0;
+		for (int i = 0; i < 4; ++i) {
+			expected += 3;
+			assertEquals(Integer.valueOf(expected), c.invoke2(t, 1, 2));
+		}
+
+		final long deadline = System.currentTimeMillis() + 30000;
+		while (!c.isCompiled() && System.currentTimeMillis() < deadline) {
+			expected += 3;
+			assertEquals(Integer.valueOf(expected), c.invoke2(t, 1, 2));
+			Thread.sleep(10);
+		}
+		assertTrue(c.isCompiled());
+		assertEquals(Integer.valueOf(expected + 3), c.invoke(t, new Object[] { 1, 2 }));
+	}
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_concurrentInvoke() throws Exception {
+		final Method m = InvokeObject.class.getMethod("call2", int.class, int.class);
+		final ReflectionInvokeWrapper<InvokeObject, Integer> c = new ReflectionInvokeWrapper<>(m, 10, 100);
+
+		final ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < 8; ++i) {
+				results.add(pool.submit(() -> {
+					final InvokeObject t = new InvokeObject();
+					int last = 0;
+					for (int j = 0; j < 5000; ++j) {
+						last = c.invoke2(t, 1, 2);
+					}
+					return last;
+				}));
+			}
+			for (final Future<Integer> f : results) {
+				assertEquals(Integer.valueOf(15000), f.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		c.forceCompilation();
+		assertTrue(c.isCompiled());
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 */
+	@Test(expected = InvokationException.class)
+	public void test_wrongArity() throws NoSuchMethodException, SecurityException {
+		final Method m = InvokeObject.class.getMethod("call");
+		new ReflectionInvokeWrapper<InvokeObject, Integer>(m).invoke1(new InvokeObject(), 1);
+	}
 }
@@ -22,10 +22,37 @@
  */
 package com.github.sdankbar.jrungen;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.BiFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 import org.junit.Test;
 
@@ -53,4 +80,511 @@ public class RuntimeCompilerTest {
 		f.apply(t, null);
 		assertEquals(1, t.i);
 	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_cacheReusesIdenticalSource() throws CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final Function<Integer, Integer> f1 = c.compileAndConstructFunctionalInterface(Integer.class, Integer.class,
+				"return arg + 1;");
+		final Function<Integer, Integer> f2 = c.compileAndConstructFunctionalInterface(Integer.class, Integer.class,
+				"return arg + 1;");
+		final Function<Integer, Integer> f3 = c.compileAndConstructFunctionalInterface(Integer.class, Integer.class,
+				"return arg + 2;");
+
+		assertSame(f1.getClass(), f2.getClass());
+		assertNotSame(f1.getClass(), f3.getClass());
+		assertEquals(Integer.valueOf(2), f2.apply(1));
+		assertEquals(Integer.valueOf(3), f3.apply(1));
+		assertEquals(1, c.getCache().getHitCount());
+		assertEquals(2, c.getCache().getMissCount());
+		assertEquals(2, c.getCache().size());
+	}
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_asyncSingleFlight() throws Exception {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final List<CompletableFuture<Function<Integer, Integer>>> futures = new ArrayList<>();
+		for (int i = 0; i < 20; ++i) {
+			futures.add(c.compileAndConstructFunctionalInterfaceAsync(Integer.class, Integer.class, "return arg * 3;"));
+		}
+		final int sum = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+				.thenApply(v -> futures.stream().mapToInt(f -> f.join().apply(2)).sum()).get();
+		assertEquals(120, sum);
+		assertEquals(1, c.getCache().getMissCount());
+	}
+
+	/**
+	 * Failed compilations complete the future exceptionally.
+	 */
+	@Test
+	public void test_asyncFailure() {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		try {
+			c.compileAsync("Broken", "public class Broken { int x = ; }").get();
+			fail();
+		} catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof CompilationException);
+		} catch (final InterruptedException e) {
+			fail();
+		}
+	}
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_retireGeneration() throws Exception {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		final ClassGeneration g = c.getGeneration();
+
+		Function<Integer, Integer> f1 = c.compileAndConstructFunctionalInterface(Integer.class, Integer.class,
+				"return arg + 10;");
+		final Function<Integer, Integer> f2 = c.compileAndConstructFunctionalInterface(Integer.class, Integer.class,
+				"return arg + 20;");
+		assertSame(f1.getClass().getClassLoader(), f2.getClass().getClassLoader());
+		assertEquals(2, g.getClassCount());
+		assertTrue(g.getBytecodeBytes() > 0);
+
+		final WeakReference<ClassLoader> loader = new WeakReference<>(f1.getClass().getClassLoader());
+		c.retireGeneration(g);
+		assertTrue(g.isRetired());
+		assertEquals(0, c.getCache().size());
+		assertNotSame(g, c.getGeneration());
+
+		f1 = c.compileAndConstructFunctionalInterface(Integer.class, Integer.class, "return arg + 10;");
+		assertNotSame(loader.get(), f1.getClass().getClassLoader());
+		assertEquals(Integer.valueOf(11), f1.apply(1));
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_cacheEviction() throws CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler(1);
+
+		final Class<?> c1 = c.compile("CacheA", "public class CacheA {}");
+		c.compile("CacheB", "public class CacheB {}");
+		final Class<?> c3 = c.compile("CacheA", "public class CacheA {}");
+
+		assertNotSame(c1, c3);
+		assertEquals(0, c.getCache().getHitCount());
+		assertEquals(2, c.getCache().getEvictionCount());
+		assertEquals(1, c.getCache().size());
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_compileAll() throws CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final Map<String, String> sources = new LinkedHashMap<>();
+		sources.put("BatchA", "public class BatchA { public static int get() { return BatchB.VALUE + 1; } }");
+		sources.put("BatchB", "public class BatchB { public static final int VALUE = 41; }");
+		sources.put("batch.pkg.BatchC", "package batch.pkg; public class BatchC {}");
+
+		final Map<String, Class<?>> classes = c.compileAll(sources);
+		assertEquals(3, classes.size());
+		assertEquals("BatchA", classes.get("BatchA").getName());
+		assertEquals("batch.pkg.BatchC", classes.get("batch.pkg.BatchC").getName());
+		assertSame(classes.get("BatchB").getClassLoader(), classes.get("BatchA").getClassLoader());
+
+		assertSame(classes.get("BatchA"), c.compileAll(sources).get("BatchA"));
+	}
+
+	/**
+	 * Source that declares nested, anonymous and helper classes and lambdas
+	 * compiles to several class files, all of which are loaded.
+	 *
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_multipleOutputClasses() throws Exception {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		final String source = "import java.util.function.Supplier;\n" //
+				+ "public class Pipeline implements Supplier<String> {\n" //
+				+ "  static class Stage { String run(String s) { return s + \"-stage\"; } }\n" //
+				+ "  public String get() {\n" //
+				+ "    final Supplier<String> anon = new Supplier<String>() {\n" //
+				+ "      public String get() { return new Helper().name(); }\n" //
+				+ "    };\n" //
+				+ "    final Supplier<String> lambda = () -> new Stage().run(anon.get());\n" //
+				+ "    return lambda.get();\n" //
+				+ "  }\n" //
+				+ "}\n" //
+				+ "class Helper { String name() { return \"helper\"; } }\n";
+
+		final Class<?> pipeline = c.compile("Pipeline", source);
+		assertEquals("helper-stage", ((Supplier<?>) RuntimeCompiler.constructInstance(pipeline)).get());
+		assertEquals(4, c.getGeneration().getClassCount());
+
+		final Supplier<String> s = c.compileAndConstructInterface(Supplier.class, new Class<?>[] { String.class },
+				"return new Object() { public String toString() { return \"anonymous\"; } }.toString();");
+		assertEquals("anonymous", s.get());
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_compileAllSharded() throws CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final Map<String, String> sources = new LinkedHashMap<>();
+		for (int i = 0; i < 5; ++i) {
+			sources.put("Shard" + i, "public class Shard" + i + " {}");
+		}
+
+		final Map<String, Class<?>> classes = c.compileAll(sources, 2);
+		assertEquals(sources.keySet(), classes.keySet());
+		assertSame(classes.get("Shard0").getClassLoader(), classes.get("Shard1").getClassLoader());
+		// Shards are defined in the current generation's shared loader.
+		assertSame(classes.get("Shard0").getClassLoader(), classes.get("Shard2").getClassLoader());
+		assertEquals(5, c.getGeneration().getClassCount());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void test_compileAllErrors() {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final Map<String, String> sources = new LinkedHashMap<>();
+		sources.put("GoodUnit", "public class GoodUnit {}");
+		sources.put("BadUnit", "public class BadUnit { int x = \"\"; }");
+		try {
+			c.compileAll(sources);
+			fail();
+		} catch (final CompilationException e) {
+			assertEquals(1, e.getUnitErrors().size());
+			assertTrue(e.getUnitErrors().containsKey("BadUnit"));
+		}
+	}
+
+	/**
+	 * A unit that does not declare the class named by its key is an error.
+	 */
+	@Test
+	public void test_compileAllUndeclaredClass() {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		try {
+			c.compileAll(Collections.singletonMap("Foo1", "class Bar1 {}"));
+			fail();
+		} catch (final CompilationException e) {
+			assertEquals("Source does not declare class Foo1", e.getMessage());
+		}
+		assertEquals(0, c.getCache().size());
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_leanProfile() throws CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		final String body = "throw new IllegalStateException();";
+
+		final Function<Integer, Integer> debug = c.compileAndConstructFunctionalInterface(Integer.class,
+				Integer.class, body);
+		c.setProfile(CompilationProfile.LEAN);
+		final Function<Integer, Integer> lean = c.compileAndConstructFunctionalInterface(Integer.class,
+				Integer.class, body);
+
+		assertTrue(generatedLineNumber(debug) > 0);
+		assertEquals(-1, generatedLineNumber(lean));
+	}
+
+	private int generatedLineNumber(final Function<Integer, Integer> f) {
+		try {
+			f.apply(0);
+			fail();
+			return 0;
+		} catch (final IllegalStateException e) {
+			return e.getStackTrace()[0].getLineNumber();
+		}
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 * @throws CompilationException  e
+	 */
+	@Test
+	public void test_methodHandleBackend() throws NoSuchMethodException, SecurityException, CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final Method m1 = InvokeObject.class.getMethod("call");
+		final Method m2 = InvokeObject.class.getMethod("call2", int.class, int.class);
+		final BiFunction<InvokeObject, Object[], Void> call = c.compileMethodCaller(m1, CallerBackend.METHOD_HANDLE);
+		final BiFunction<InvokeObject, Object[], Integer> call2 = c.compileMethodCaller(m2, CallerBackend.METHOD_HANDLE);
+		c.setCallerBackend(CallerBackend.METHOD_HANDLE);
+		final BiFunction<Object, Object[], Integer> parse = c
+				.compileMethodCaller(Integer.class.getMethod("parseInt", String.class));
+
+		final InvokeObject t = new InvokeObject();
+		call.apply(t, null);
+		assertEquals(1, t.i);
+		assertEquals(Integer.valueOf(6), call2.apply(t, new Object[] { 2, 3 }));
+		assertEquals(Integer.valueOf(12), parse.apply(null, new Object[] { "12" }));
+		assertEquals(0, c.getCache().getMissCount());
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 * @throws CompilationException  e
+	 */
+	@Test
+	public void test_bytecodeBackend() throws NoSuchMethodException, SecurityException, CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		c.setCallerBackend(CallerBackend.BYTECODE);
+
+		final BiFunction<InvokeObject, Object[], Integer> call2 = c
+				.compileMethodCaller(InvokeObject.class.getMethod("call2", int.class, int.class));
+		final BiFunction<Object, Object[], Long> max = c
+				.compileMethodCaller(Math.class.getMethod("max", long.class, long.class));
+		final BiFunction<Object, Object[], Void> fill = c
+				.compileMethodCaller(Arrays.class.getMethod("fill", int[].class, int.class));
+		final BiFunction<List<String>, Object[], String> get = c
+				.compileMethodCaller(List.class.getMethod("get", int.class));
+		final BiFunction<String, Object[], String> substring = c
+				.compileMethodCaller(String.class.getMethod("substring", int.class, int.class));
+
+		final InvokeObject t = new InvokeObject();
+		assertEquals(Integer.valueOf(3), call2.apply(t, new Object[] { 1, 2 }));
+		assertEquals(Long.valueOf(7), max.apply(null, new Object[] { 7L, -3L }));
+		final int[] array = new int[3];
+		assertEquals(null, fill.apply(null, new Object[] { array, 4 }));
+		assertArrayEquals(new int[] { 4, 4, 4 }, array);
+		final List<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+		assertEquals("b", get.apply(list, new Object[] { 1 }));
+		assertEquals("ell", substring.apply("hello", new Object[] { 1, 4 }));
+
+		assertSame(call2.getClass(), c.compileMethodCaller(InvokeObject.class.getMethod("call2", int.class, int.class))
+				.getClass());
+	}
+
+	/**
+	 * Bytecode callers can call methods of classes the system class loader
+	 * cannot see, and callers for the same method in classes from different
+	 * loaders are not shared.
+	 *
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_bytecodeBackendChildLoader() throws Exception {
+		final URL classes = InvokeObject.class.getProtectionDomain().getCodeSource().getLocation();
+		try (URLClassLoader l1 = new URLClassLoader(new URL[] { classes }, null);
+				URLClassLoader l2 = new URLClassLoader(new URL[] { classes }, null)) {
+			final Class<?> c1 = l1.loadClass(InvokeObject.class.getName());
+			final Class<?> c2 = l2.loadClass(InvokeObject.class.getName());
+			assertNotSame(c1, c2);
+
+			final RuntimeCompiler c = new RuntimeCompiler();
+			final BiFunction<Object, Object[], Integer> call1 = c.compileMethodCaller(c1.getMethod("call2", int.class,
+					int.class), CallerBackend.BYTECODE);
+			final BiFunction<Object, Object[], Integer> call2 = c.compileMethodCaller(c2.getMethod("call2", int.class,
+					int.class), CallerBackend.BYTECODE);
+			assertNotSame(call1.getClass(), call2.getClass());
+			assertSame(call1.getClass(), c.compileMethodCaller(c1.getMethod("call2", int.class, int.class),
+					CallerBackend.BYTECODE).getClass());
+
+			assertEquals(Integer.valueOf(3), call1.apply(c1.getConstructor().newInstance(), new Object[] { 1, 2 }));
+			assertEquals(Integer.valueOf(5), call2.apply(c2.getConstructor().newInstance(), new Object[] { 2, 3 }));
+		}
+	}
+
+	/**
+	 * Type that generated code in another package cannot name.
+	 */
+	static class Hidden {
+	}
+
+	/**
+	 * Public class with a method that takes a package-private type.
+	 */
+	public static class Pub {
+		public int m(final Hidden h) {
+			return 1;
+		}
+	}
+
+	/**
+	 * Methods with parameter types that generated code cannot access are
+	 * rejected rather than failing when called.
+	 *
+	 * @throws NoSuchMethodException e
+	 */
+	@Test
+	public void test_bytecodeBackendInaccessibleType() throws NoSuchMethodException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		try {
+			c.compileMethodCaller(Pub.class.getMethod("m", Hidden.class), CallerBackend.BYTECODE);
+			fail();
+		} catch (final CompilationException e) {
+			assertTrue(e.getMessage().startsWith("Method is not publicly accessible"));
+		}
+	}
+
+	/**
+	 * Functional interface used to test compiling user defined interfaces.
+	 */
+	public interface Scorer<T> {
+		/**
+		 * @param value  v
+		 * @param weight w
+		 * @return score
+		 */
+		double score(T value, int weight);
+	}
+
+	/**
+	 * @throws Exception e
+	 */
+	@Test
+	public void test_compileInterface() throws Exception {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final ToIntFunction<InvokeObject> toInt = c.compileAndConstructInterface(ToIntFunction.class,
+				new Class<?>[] { InvokeObject.class }, "return arg.call2(2, 3);");
+		final IntBinaryOperator op = c.compileAndConstructInterface(IntBinaryOperator.class, "return arg1 * arg2;");
+		final DoubleUnaryOperator sqrt = c.compileAndConstructInterface(DoubleUnaryOperator.class,
+				"return Math.sqrt(arg);");
+		final Predicate<String> isEmpty = c.compileAndConstructInterface(Predicate.class,
+				new Class<?>[] { String.class }, "return arg.isEmpty();");
+		final Scorer<String> scorer = c.compileAndConstructInterface(Scorer.class, new Class<?>[] { String.class },
+				"return arg1.length() * (double) arg2;");
+		final Callable<String> callable = c.compileAndConstructInterface(Callable.class,
+				new Class<?>[] { String.class }, "throw new java.io.IOException(\"checked\");");
+
+		assertEquals(5, toInt.applyAsInt(new InvokeObject()));
+		assertEquals(12, op.applyAsInt(3, 4));
+		assertEquals(3.0, sqrt.applyAsDouble(9.0), 0.0);
+		assertTrue(isEmpty.test(""));
+		assertEquals(6.0, scorer.score("abc", 2), 0.0);
+		try {
+			callable.call();
+			fail();
+		} catch (final IOException e) {
+			assertEquals("checked", e.getMessage());
+		}
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test(expected = CompilationException.class)
+	public void test_compileInterfaceNotFunctional() throws CompilationException {
+		new RuntimeCompiler().compileAndConstructInterface(List.class, new Class<?>[] { String.class }, "return null;");
+	}
+
+	/**
+	 * Caller interface with primitive parameters.
+	 */
+	public interface IntCaller {
+		/**
+		 * @param obj o
+		 * @param a   a
+		 * @param b   b
+		 * @return r
+		 */
+		int call(InvokeObject obj, int a, int b);
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 * @throws CompilationException  e
+	 */
+	@Test
+	public void test_typedMethodCaller() throws NoSuchMethodException, SecurityException, CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final IntCaller call2 = c.compileMethodCaller(InvokeObject.class.getMethod("call2", int.class, int.class),
+				IntCaller.class);
+		final IntBinaryOperator max = c.compileMethodCaller(Math.class.getMethod("max", int.class, int.class),
+				IntBinaryOperator.class);
+		final Invokers.Invoker0<InvokeObject, Void> call = c.compileMethodCaller(InvokeObject.class.getMethod("call"),
+				Invokers.Invoker0.class, InvokeObject.class, Void.class);
+
+		final InvokeObject t = new InvokeObject();
+		assertEquals(3, call2.call(t, 1, 2));
+		assertEquals(5, max.applyAsInt(5, -5));
+		assertEquals(null, call.invoke(t));
+		assertEquals(4, t.i);
+	}
+
+	/**
+	 * @throws SecurityException    e
+	 * @throws NoSuchFieldException e
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_fieldAccessor() throws NoSuchFieldException, SecurityException, CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final Field f = InvokeObject.class.getField("i");
+		final ToIntFunction<InvokeObject> getter = c.compileFieldAccessor(f, ToIntFunction.class, InvokeObject.class);
+		final ObjIntConsumer<InvokeObject> setter = c.compileFieldAccessor(f, ObjIntConsumer.class,
+				InvokeObject.class);
+
+		final InvokeObject t = new InvokeObject();
+		setter.accept(t, 12);
+		assertEquals(12, t.i);
+		assertEquals(12, getter.applyAsInt(t));
+	}
+
+	/**
+	 * @throws SecurityException     e
+	 * @throws NoSuchMethodException e
+	 * @throws CompilationException  e
+	 */
+	@Test
+	public void test_constructorFactories() throws NoSuchMethodException, SecurityException, CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+
+		final Supplier<InvokeObject> supplier = c.compileSupplier(InvokeObject.class.getConstructor());
+		assertEquals(0, supplier.get().i);
+
+		final Constructor<ReflectionConstructorWrapperTest.Point> ctor = ReflectionConstructorWrapperTest.Point.class
+				.getConstructor(int.class, int.class);
+		final Function<Object[], ReflectionConstructorWrapperTest.Point> array = c.compileArrayFactory(ctor);
+		assertEquals(3, array.apply(new Object[] { 3, 4 }).x);
+
+		final BiFunction<Integer, Integer, ReflectionConstructorWrapperTest.Point> typed = c.compileFactory(ctor,
+				BiFunction.class, Integer.class, Integer.class, ReflectionConstructorWrapperTest.Point.class);
+		assertEquals(4, typed.apply(3, 4).y);
+	}
+
+	/**
+	 * @throws InterruptedException e
+	 * @throws ExecutionException   e
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_warmUp() throws InterruptedException, ExecutionException, CompilationException {
+		final RuntimeCompiler c = new RuntimeCompiler();
+		final CompletableFuture<Void> first = c.warmUpAsync();
+		final CompletableFuture<Void> second = c.warmUpAsync();
+		first.get();
+		second.get();
+		assertTrue(c.isWarm());
+		assertTrue(new RuntimeCompiler().isWarm());
+
+		// Already warm, so these return without compiling anything.
+		c.warmUp();
+		assertTrue(c.warmUpAsync().isDone());
+		assertEquals(0, c.getCache().size());
+	}
 }
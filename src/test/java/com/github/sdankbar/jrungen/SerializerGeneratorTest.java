@@ -0,0 +1,159 @@
+/**
+ * The MIT License
+ * Copyright © 2020 Stephen Dankbar
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.github.sdankbar.jrungen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the SerializerGenerator class.
+ */
+public class SerializerGeneratorTest {
+
+	/**
+	 * Class with one field of each kind.
+	 */
+	public static class Message {
+		public int id;
+		public long time;
+		public double score;
+		public boolean flag;
+		public char grade;
+		public String text;
+		public String note;
+		public int[] values;
+		public byte[] payload;
+		public transient int ignored;
+	}
+
+	/**
+	 * Class with a different layout.
+	 */
+	public static class Other {
+		public int id;
+		public String name;
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_roundTrip() throws CompilationException {
+		final SerializerGenerator g = new SerializerGenerator(new RuntimeCompiler());
+		final BinaryCodec<Message> codec = g.getCodec(Message.class);
+		assertSame(codec, g.getCodec(Message.class));
+
+		final Message m = new Message();
+		m.id = 7;
+		m.time = 123456789L;
+		m.score = 2.5;
+		m.flag = true;
+		m.grade = 'B';
+		m.text = "hello";
+		m.values = new int[] { 1, 2, 3 };
+		m.payload = new byte[] { 4, 5 };
+		m.ignored = 9;
+
+		for (final ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(codec.encodedSize(m)),
+				ByteBuffer.allocateDirect(codec.encodedSize(m)) }) {
+			codec.encode(m, buffer);
+			assertEquals(0, buffer.remaining());
+			buffer.flip();
+
+			final Message d = codec.decode(buffer);
+			assertEquals(7, d.id);
+			assertEquals(123456789L, d.time);
+			assertEquals(2.5, d.score, 0);
+			assertEquals(true, d.flag);
+			assertEquals('B', d.grade);
+			assertEquals("hello", d.text);
+			assertNull(d.note);
+			assertArrayEquals(new int[] { 1, 2, 3 }, d.values);
+			assertArrayEquals(new byte[] { 4, 5 }, d.payload);
+			assertEquals(0, d.ignored);
+		}
+	}
+
+	/**
+	 * @throws CompilationException e
+	 */
+	@Test(expected = InvokationException.class)
+	public void test_fingerprintMismatch() throws CompilationException {
+		final SerializerGenerator g = new SerializerGenerator(new RuntimeCompiler());
+		final Other o = new Other();
+		final BinaryCodec<Other> codec = g.getCodec(Other.class);
+		final ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(o));
+		codec.encode(o, buffer);
+		buffer.flip();
+
+		g.getCodec(Message.class).decode(buffer);
+	}
+
+	/**
+	 * A length larger than the rest of the buffer fails before allocating.
+	 *
+	 * @throws CompilationException e
+	 */
+	@Test
+	public void test_truncatedBuffer() throws CompilationException {
+		final SerializerGenerator g = new SerializerGenerator(new RuntimeCompiler());
+		final BinaryCodec<Message> codec = g.getCodec(Message.class);
+		final Message m = new Message();
+		m.text = "hello";
+		m.values = new int[] { 1, 2, 3 };
+		m.payload = new byte[] { 4, 5 };
+		final ByteBuffer buffer = ByteBuffer.allocate(codec.encodedSize(m));
+		codec.encode(m, buffer);
+		buffer.flip();
+
+		final ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.limit() - 1));
+		try {
+			codec.decode(truncated);
+			fail();
+		} catch (final InvokationException e) {
+			assertTrue(e.getMessage().contains("exceeds the remaining"));
+		}
+
+		final BinaryCodec<Other> other = g.getCodec(Other.class);
+		final ByteBuffer hostile = ByteBuffer.allocate(other.encodedSize(new Other()));
+		other.encode(new Other(), hostile);
+		// The length of name, which follows the fingerprint and id.
+		hostile.putInt(Long.BYTES + Integer.BYTES, Integer.MAX_VALUE);
+		hostile.flip();
+		try {
+			other.decode(hostile);
+			fail();
+		} catch (final InvokationException e) {
+			assertTrue(e.getMessage().contains(String.valueOf(Integer.MAX_VALUE)));
+		}
+	}
+}
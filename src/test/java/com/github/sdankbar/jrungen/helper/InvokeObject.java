@@ -37,4 +37,64 @@ public class InvokeObject {
 	public int call2(final int a, final int b) {
 		return i += (a + b);
 	}
+
+	// Side effect free methods of each arity, for benchmarks shared between
+	// threads.
+
+	public int prim0() {
+		return i;
+	}
+
+	public int prim1(final int a) {
+		return a;
+	}
+
+	public int prim2(final int a, final int b) {
+		return a + b;
+	}
+
+	public int prim3(final int a, final int b, final int c) {
+		return a + b + c;
+	}
+
+	public int prim4(final int a, final int b, final int c, final int d) {
+		return a + b + c + d;
+	}
+
+	public int prim5(final int a, final int b, final int c, final int d, final int e) {
+		return a + b + c + d + e;
+	}
+
+	public int prim6(final int a, final int b, final int c, final int d, final int e, final int f) {
+		return a + b + c + d + e + f;
+	}
+
+	public Integer ref0() {
+		return i;
+	}
+
+	public Integer ref1(final Integer a) {
+		return a;
+	}
+
+	public Integer ref2(final Integer a, final Integer b) {
+		return a + b;
+	}
+
+	public Integer ref3(final Integer a, final Integer b, final Integer c) {
+		return a + b + c;
+	}
+
+	public Integer ref4(final Integer a, final Integer b, final Integer c, final Integer d) {
+		return a + b + c + d;
+	}
+
+	public Integer ref5(final Integer a, final Integer b, final Integer c, final Integer d, final Integer e) {
+		return a + b + c + d + e;
+	}
+
+	public Integer ref6(final Integer a, final Integer b, final Integer c, final Integer d, final Integer e,
+			final Integer f) {
+		return a + b + c + d + e + f;
+	}
 }
\ No newline at end of file